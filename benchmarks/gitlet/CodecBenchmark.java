@@ -0,0 +1,94 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.TreeMap;
+
+/** Compares the binary encodings of Codec with the Java serialization
+ *  Utils.writeObject and readObject use: encoded size and encode and
+ *  decode throughput for a commit and a staging index. Usage:
+ *      java gitlet.CodecBenchmark [STAGED FILES] [ROUNDS]
+ *  The staging index holds STAGED FILES files (default 1000).
+ *
+ *  @author Natalia Ramirez
+ */
+public class CodecBenchmark {
+
+    public static void main(String... args) throws IOException, ClassNotFoundException {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        String hash = Utils.sha1("benchmark");
+        Commit commit = new Commit(System.getProperty("user.dir"),
+                "Sun Oct 18 12:00:00 2026 +0000", "Fix the parser", hash, hash, null);
+        StagingArea staging = new StagingArea(hash, "master");
+        TreeMap<String, String> staged = new TreeMap<>();
+        for (int i = 0; i < files; i += 1) {
+            staged.put("src/dir" + i % 20 + "/file" + i + ".txt", Utils.sha1("file" + i));
+        }
+        staging.stagedToAdd = staged;
+
+        report("commit", rounds, () -> Codec.encode(commit),
+            () -> Utils.serialize(commit), Codec::decodeCommit);
+        report("staging index", Math.max(1, rounds * 20 / files), () -> Codec.encode(staging),
+            () -> Utils.serialize(staging), Codec::decodeStagingArea);
+    }
+
+    /** An encoder under test. */
+    private interface Encode {
+        byte[] run();
+    }
+
+    /** A decoder under test. */
+    private interface Decode {
+        Object run(byte[] bytes);
+    }
+
+    /** Times ROUNDS runs of encoding and decoding NAME both ways. */
+    private static void report(String name, int rounds, Encode codec, Encode serialization,
+                               Decode decode) throws IOException, ClassNotFoundException {
+        byte[] encoded = codec.run();
+        byte[] serialized = serialization.run();
+        // warm up both paths before timing them
+        time(rounds, codec, serialization, decode, encoded, serialized);
+        double[] seconds = time(rounds, codec, serialization, decode, encoded, serialized);
+        System.out.printf("%s: codec %d bytes, serialization %d bytes%n", name,
+                encoded.length, serialized.length);
+        System.out.printf("  encode: codec %8.0f/s, serialization %8.0f/s%n",
+                rounds / seconds[0], rounds / seconds[1]);
+        System.out.printf("  decode: codec %8.0f/s, serialization %8.0f/s%n",
+                rounds / seconds[2], rounds / seconds[3]);
+    }
+
+    /** Returns the seconds ROUNDS encodings and decodings took with the
+     *  codec and with serialization. */
+    private static double[] time(int rounds, Encode codec, Encode serialization, Decode decode,
+                                 byte[] encoded, byte[] serialized)
+            throws IOException, ClassNotFoundException {
+        double[] seconds = new double[4];
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i += 1) {
+            codec.run();
+        }
+        seconds[0] = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i += 1) {
+            serialization.run();
+        }
+        seconds[1] = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i += 1) {
+            decode.run(encoded);
+        }
+        seconds[2] = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i += 1) {
+            try (ObjectInputStream in =
+                     new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+                in.readObject();
+            }
+        }
+        seconds[3] = (System.nanoTime() - start) / 1e9;
+        return seconds;
+    }
+}
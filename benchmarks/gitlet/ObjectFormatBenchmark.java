@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** Measures how much the compressed object format saves over raw objects,
+ *  and how fast objects are written and read back. Usage:
+ *      java gitlet.ObjectFormatBenchmark [DIR] [ROUNDS]
+ *  DIR defaults to testing/, and every regular file under it is encoded as a
+ *  blob. Set GITLET_COMPRESSION_LEVEL to compare levels.
+ *
+ *  @author Natalia Ramirez
+ */
+public class ObjectFormatBenchmark {
+
+    public static void main(String... args) throws IOException {
+        Path root = Paths.get(args.length > 0 ? args[0] : "testing");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        List<byte[]> payloads = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                payloads.add(Files.readAllBytes(path));
+            }
+        }
+        Path scratch = Files.createTempDirectory("gitlet-bench");
+        List<File> objects = new ArrayList<>();
+        for (int i = 0; i < payloads.size(); i += 1) {
+            File object = scratch.resolve("obj" + i).toFile();
+            object.deleteOnExit();
+            objects.add(object);
+        }
+        scratch.toFile().deleteOnExit();
+
+        long rawBytes = 0;
+        for (byte[] payload : payloads) {
+            rawBytes += payload.length;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i += 1) {
+            for (int j = 0; j < payloads.size(); j += 1) {
+                ObjectFormat.write(objects.get(j), ObjectFormat.TYPE_BLOB, payloads.get(j));
+            }
+        }
+        double writeSeconds = (System.nanoTime() - start) / 1e9;
+
+        long storedBytes = 0;
+        for (File object : objects) {
+            storedBytes += object.length();
+        }
+
+        start = System.nanoTime();
+        long readBytes = 0;
+        for (int i = 0; i < rounds; i += 1) {
+            for (File object : objects) {
+                readBytes += ObjectFormat.read(object).length;
+            }
+        }
+        double readSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("objects:          %d under %s%n", payloads.size(), root);
+        System.out.printf("compression level %d%n", Config.compressionLevel());
+        System.out.printf("raw size:         %d bytes%n", rawBytes);
+        System.out.printf("stored size:      %d bytes (%.1f%% saved)%n", storedBytes,
+                100.0 * (rawBytes - storedBytes) / Math.max(1, rawBytes));
+        System.out.printf("write throughput: %.1f MB/s, %.0f objects/s%n",
+                rawBytes * rounds / writeSeconds / 1e6, payloads.size() * rounds / writeSeconds);
+        System.out.printf("read throughput:  %.1f MB/s, %.0f objects/s%n",
+                readBytes / readSeconds / 1e6, payloads.size() * rounds / readSeconds);
+    }
+}
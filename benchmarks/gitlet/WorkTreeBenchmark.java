@@ -0,0 +1,69 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/** Measures how walking and hashing a working tree scales with the number
+ *  of worker threads. Usage:
+ *      java gitlet.WorkTreeBenchmark [FILES] [KILOBYTES] [ROUNDS]
+ *  A synthetic tree of FILES files (default 2000) of KILOBYTES each (default
+ *  16), spread over nested directories, is hashed with 1, 2, 4, ... workers
+ *  up to the number of cores. Every round starts from an empty stat cache,
+ *  so every file is read.
+ *
+ *  @author Natalia Ramirez
+ */
+public class WorkTreeBenchmark {
+
+    public static void main(String... args) throws IOException {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int kilobytes = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        Path root = Files.createTempDirectory("gitlet-worktree");
+        Random random = new Random(61);
+        byte[] contents = new byte[kilobytes * 1024];
+        for (int i = 0; i < files; i += 1) {
+            Path file = root.resolve("d" + i % 10 + "/e" + i % 7 + "/f" + i + ".txt");
+            Files.createDirectories(file.getParent());
+            random.nextBytes(contents);
+            Files.write(file, contents);
+        }
+
+        System.out.printf("tree:    %d files of %d KB%n", files, kilobytes);
+        double baseline = 0;
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(2 * threads, cores)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < rounds; i += 1) {
+                long start = System.nanoTime();
+                List<String> paths = WorkTree.walk(root.toFile(), "", pool);
+                StatCache cache = new StatCache();
+                WorkTree.map(paths, path -> cache.hash(path, new File(root.toFile(), path)),
+                        pool);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            pool.shutdown();
+            double seconds = best / 1e9;
+            if (threads == 1) {
+                baseline = seconds;
+            }
+            System.out.printf("threads %3d: %7.1f ms, %6.0f files/s, speedup %.2f%n",
+                    threads, seconds * 1e3, files / seconds, baseline / seconds);
+            if (threads == cores) {
+                break;
+            }
+        }
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+}
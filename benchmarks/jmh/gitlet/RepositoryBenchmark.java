@@ -0,0 +1,177 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** JMH benchmarks of the core commands on a synthetic repository of
+ *  fileCount files of fileSize bytes each, with historyDepth commits after
+ *  the one adding them all. Run with
+ *      mvn -P bench package && java -jar target/benchmarks.jar
+ *  and pass -p fileCount=... and so on to choose other repositories.
+ *
+ *  Repository finds its directory through user.dir when it is first used,
+ *  so every trial runs in a fresh JVM (Fork) and sets user.dir before
+ *  touching any gitlet class that reads it.
+ *
+ *  @author Natalia Ramirez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RepositoryBenchmark {
+
+    @Param({"100", "1000"})
+    int fileCount;
+
+    @Param({"1024", "65536"})
+    int fileSize;
+
+    @Param({"10", "200"})
+    int historyDepth;
+
+    /** The working directory of the repository. */
+    private Path root;
+    /** Standard output as it was before the benchmark silenced it. */
+    private PrintStream stdout;
+    /** Source of file contents. */
+    private final Random random = new Random(61);
+    /** Number of files changed so far, used to pick the next one. */
+    private int changes;
+    /** Contents of one file of the repository, for sha1. */
+    private byte[] contents;
+
+    @Setup(Level.Trial)
+    public void createRepository() throws IOException {
+        root = Files.createTempDirectory("gitlet-jmh");
+        System.setProperty("user.dir", root.toString());
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        contents = new byte[fileSize];
+        run(Repository::init);
+        String[] paths = new String[fileCount];
+        for (int i = 0; i < fileCount; i += 1) {
+            paths[i] = path(i);
+            write(paths[i]);
+        }
+        run(() -> Repository.add(paths));
+        run(() -> Repository.commit("add " + fileCount + " files"));
+        run(() -> Repository.branch("other"));
+        for (int i = 0; i < historyDepth; i += 1) {
+            changeAndAdd();
+            int n = i;
+            run(() -> Repository.commit("change " + n));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteRepository() throws IOException {
+        System.setOut(stdout);
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    /** A working file given new contents before every invocation, for the
+     *  benchmarks of add and commit. */
+    @State(Scope.Thread)
+    public static class ChangedFile {
+        /** The path of the changed file. */
+        String path;
+
+        @Setup(Level.Invocation)
+        public void change(RepositoryBenchmark repository) throws IOException {
+            path = path(repository.changes % repository.fileCount);
+            repository.write(path);
+            repository.changes += 1;
+        }
+    }
+
+    @Benchmark
+    public void add(ChangedFile file) {
+        run(() -> Repository.add(file.path));
+    }
+
+    @Benchmark
+    public void commit(ChangedFile file) {
+        run(() -> Repository.add(file.path));
+        run(() -> Repository.commit("change " + file.path));
+    }
+
+    @Benchmark
+    public void log() {
+        run(() -> Repository.log(Integer.MAX_VALUE));
+    }
+
+    @Benchmark
+    public void status() {
+        run(Repository::status);
+    }
+
+    /** Switches to the other branch and back, so each invocation starts from
+     *  the same branch. */
+    @Benchmark
+    public void checkout3() {
+        run(() -> Repository.checkout3("other"));
+        run(() -> Repository.checkout3("master"));
+    }
+
+    @Benchmark
+    public void sha1(Blackhole blackhole) {
+        blackhole.consume(Utils.sha1(contents));
+    }
+
+    /** Runs COMMAND the way Main runs one command. */
+    private static void run(Runnable command) {
+        RepositoryContext.open();
+        command.run();
+        RepositoryContext.close();
+    }
+
+    /** Returns the path of file I, spread over nested directories. */
+    private static String path(int i) {
+        return "src/d" + i % 16 + "/f" + i + ".txt";
+    }
+
+    /** Fills the working file PATH with new contents. */
+    private void write(String path) throws IOException {
+        random.nextBytes(contents);
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, contents);
+    }
+
+    /** Changes the next file and stages it. */
+    private void changeAndAdd() throws IOException {
+        String path = path(changes % fileCount);
+        write(path);
+        run(() -> Repository.add(path));
+        changes += 1;
+    }
+}
@@ -3,10 +3,13 @@ package gitlet;
 import java.io.Serializable;
 
 public class Branch implements Serializable {
+    /** That of the class that wrote the first repositories, so that branches
+     *  stored with Java serialization can still be read. */
+    private static final long serialVersionUID = 53019996815156069L;
     String name;
     String commitHash;
-    public Branch(String branchName, Commit commit) {
+    public Branch(String branchName, String headCommitHash) {
         name = branchName;
-        commitHash = Saving.commitHash(commit);
+        commitHash = headCommitHash;
     }
 }
@@ -0,0 +1,101 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/** A thin client of the Server: java gitlet.Client ARGS sends the command
+ *  ARGS to the server of the repository in the current directory and
+ *  prints its output, or, if no server is running, runs the command itself
+ *  as gitlet.Main would. It only touches the rest of gitlet in that case,
+ *  so it starts quickly.
+ *
+ *  @author Natalia Ramirez
+ */
+public class Client {
+    /** Name of the server's socket in the .gitlet directory. */
+    static final String SOCKET = "server.sock";
+
+    /** Usage: java gitlet.Client ARGS, where ARGS are those of gitlet.Main. */
+    public static void main(String[] args) {
+        File socket = new File(new File(System.getProperty("user.dir"), ".gitlet"), SOCKET);
+        SocketChannel server = connect(socket);
+        if (server == null) {
+            Main.main(args);
+            return;
+        }
+        int status;
+        try {
+            DataOutputStream request = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(server)));
+            request.writeInt(args.length);
+            for (String arg : args) {
+                writeString(request, arg);
+            }
+            request.flush();
+            DataInputStream reply = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(server)));
+            status = reply.readInt();
+            System.out.write(readBytes(reply));
+            System.out.flush();
+            System.err.write(readBytes(reply));
+            System.err.flush();
+        } catch (IOException excp) {
+            System.err.println("gitlet server: " + excp.getMessage());
+            status = Server.FAILED;
+        } finally {
+            close(server);
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** Returns a connection to the server listening on SOCKET, or null if
+     *  there is none. */
+    static SocketChannel connect(File socket) {
+        if (!socket.exists()) {
+            return null;
+        }
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(socket.toPath()));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Closes CHANNEL, ignoring errors. */
+    static void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            // nothing to do
+        }
+    }
+
+    /** Writes S to OUT as its UTF-8 length and bytes. */
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    /** Reads a string written by writeString from IN. */
+    static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    /** Reads a length (4 bytes) and that many bytes from IN. */
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,230 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import gitlet.Instrumentation.Counter;
+
+/** The binary encodings of commits, branches and the staging index. Each
+ *  starts with a tag naming what it holds and a version, followed by the
+ *  fields in a fixed order:
+ *
+ *      commit:  'c' | version | parent | [second parent] | tree | author |
+ *               date | message | files (only in commits stored before trees)
+ *      branch:  'b' | version | name | commit
+ *      staging: 's' | version | head | branch | staged files | removed files
+ *
+ *  Only merge commits have a second parent, and are written as version 2,
+ *  so that the encoding, and the hash, of other commits stays as it was.
+ *  A string is its UTF-8 length (4 bytes, -1 for null) and bytes, and a map
+ *  its size (4 bytes, -1 for null) and then its keys and values in key
+ *  order. Equal objects therefore always have the same encoding, and a
+ *  commit's hash is the SHA-1 hash of its encoding. Commits, branches and
+ *  staging indexes written with Java serialization before these encodings
+ *  existed are still read: each of those classes pins the serialVersionUID
+ *  of the class that wrote them, and StagingArea reads their older shape.
+ *
+ *  @author Natalia Ramirez
+ */
+class Codec {
+    /** Version of the encodings written. */
+    static final byte VERSION = 1;
+    /** Version of the encoding of merge commits. */
+    static final byte MERGE_VERSION = 2;
+    private static final byte COMMIT = 'c';
+    private static final byte BRANCH = 'b';
+    private static final byte STAGING = 's';
+    /** First byte of every Java serialization stream. */
+    private static final byte SERIALIZED = (byte) 0xac;
+
+    /* ENCODING */
+
+    /** Returns the encoding of COMMIT. */
+    static byte[] encode(Commit commit) {
+        boolean merge = commit.secondParentHash != null;
+        Writer out = new Writer(COMMIT, merge ? MERGE_VERSION : VERSION);
+        out.string(commit.parentHash);
+        if (merge) {
+            out.string(commit.secondParentHash);
+        }
+        out.string(commit.treeHash);
+        out.string(commit.author);
+        out.string(commit.dateCommit);
+        out.string(commit.message);
+        out.map(commit.blobMap);
+        return out.toByteArray();
+    }
+
+    /** Returns the encoding of BRANCH. */
+    static byte[] encode(Branch branch) {
+        Writer out = new Writer(BRANCH, VERSION);
+        out.string(branch.name);
+        out.string(branch.commitHash);
+        return out.toByteArray();
+    }
+
+    /** Returns the encoding of STAGING. */
+    static byte[] encode(StagingArea staging) {
+        Writer out = new Writer(STAGING, VERSION);
+        out.string(staging.headCommitHash);
+        out.string(staging.currentBranch);
+        out.map(staging.stagedToAdd);
+        out.map(staging.toRemove);
+        return out.toByteArray();
+    }
+
+    /* DECODING */
+
+    /** Returns the commit encoded, or serialized, in BYTES. */
+    static Commit decodeCommit(byte[] bytes) {
+        if (isSerialized(bytes)) {
+            return ObjectFormat.deserialize(bytes, Commit.class);
+        }
+        Reader in = new Reader(bytes, COMMIT);
+        String parentHash = in.string();
+        String secondParentHash = in.version == MERGE_VERSION ? in.string() : null;
+        String treeHash = in.string();
+        String author = in.string();
+        String date = in.string();
+        String message = in.string();
+        Commit commit = new Commit(author, date, message, parentHash, treeHash, in.map());
+        commit.secondParentHash = secondParentHash;
+        return commit;
+    }
+
+    /** Returns the branch encoded, or serialized, in BYTES. */
+    static Branch decodeBranch(byte[] bytes) {
+        if (isSerialized(bytes)) {
+            return ObjectFormat.deserialize(bytes, Branch.class);
+        }
+        Reader in = new Reader(bytes, BRANCH);
+        String name = in.string();
+        return new Branch(name, in.string());
+    }
+
+    /** Returns the staging index encoded, or serialized, in BYTES. */
+    static StagingArea decodeStagingArea(byte[] bytes) {
+        if (isSerialized(bytes)) {
+            return ObjectFormat.deserialize(bytes, StagingArea.class);
+        }
+        Reader in = new Reader(bytes, STAGING);
+        String head = in.string();
+        StagingArea staging = new StagingArea(head, in.string());
+        staging.stagedToAdd = in.map();
+        staging.toRemove = in.map();
+        return staging;
+    }
+
+    /** True if BYTES hold a Java serialization stream rather than one of
+     *  these encodings. */
+    private static boolean isSerialized(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == SERIALIZED;
+    }
+
+    /** Builds one encoding. */
+    private static class Writer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        /** Starts an encoding tagged TAG, of version VERSION. */
+        Writer(byte tag, byte version) {
+            bytes.write(tag);
+            bytes.write(version);
+        }
+
+        /** Appends S. */
+        void string(String s) {
+            try {
+                if (s == null) {
+                    out.writeInt(-1);
+                    return;
+                }
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Appends MAP. */
+        void map(TreeMap<String, String> map) {
+            try {
+                out.writeInt(map == null ? -1 : map.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (map != null) {
+                for (Map.Entry<String, String> entry : map.entrySet()) {
+                    string(entry.getKey());
+                    string(entry.getValue());
+                }
+            }
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /** Reads one encoding back. */
+    private static class Reader {
+        private final ByteBuffer in;
+        /** The version of the encoding. */
+        private final byte version;
+
+        /** Starts reading BYTES, which must be an encoding tagged TAG. */
+        Reader(byte[] bytes, byte tag) {
+            Instrumentation.count(Counter.DESERIALIZATIONS);
+            in = ByteBuffer.wrap(bytes);
+            if (bytes.length < 2 || in.get() != tag) {
+                throw Utils.error("Unexpected object.");
+            }
+            version = in.get();
+            if (version != VERSION && (tag != COMMIT || version != MERGE_VERSION)) {
+                throw Utils.error("Object has an unsupported version.");
+            }
+        }
+
+        /** Returns the next string. */
+        String string() {
+            try {
+                int length = in.getInt();
+                if (length < 0) {
+                    return null;
+                }
+                String s = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+                return s;
+            } catch (BufferUnderflowException | IndexOutOfBoundsException
+                     | IllegalArgumentException excp) {
+                throw Utils.error("Object is truncated.");
+            }
+        }
+
+        /** Returns the next map. */
+        TreeMap<String, String> map() {
+            int size;
+            try {
+                size = in.getInt();
+            } catch (BufferUnderflowException excp) {
+                throw Utils.error("Object is truncated.");
+            }
+            if (size < 0) {
+                return null;
+            }
+            TreeMap<String, String> map = new TreeMap<>();
+            for (int i = 0; i < size; i += 1) {
+                String key = string();
+                map.put(key, string());
+            }
+            return map;
+        }
+    }
+}
@@ -3,10 +3,14 @@ package gitlet;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Map;
 import java.util.TreeMap;
 
 
 public class Commit implements Serializable {
+    /** That of the class that wrote the first repositories, so that commits
+     *  stored with Java serialization can still be read. */
+    private static final long serialVersionUID = 5484577278697087828L;
     static String initCommitHash;
     /** The author of this commit */
     String author;
@@ -16,9 +20,20 @@ public class Commit implements Serializable {
     String message;
     /** The SHA1-hash of the parent of this commit. */
     String parentHash;
-    /** blob map with file names and hashes captured in this commit */
+    /** The SHA1-hash of the branch head merged into this commit, or null if
+     *  it is not a merge. */
+    String secondParentHash;
+    /** The hash of the root Tree of the files captured in this commit. */
+    String treeHash;
+    /** blob map with file names and hashes captured in this commit. Only
+     *  commits stored before trees have one; see files(). */
     // TreeMap<FileNameOfBlob, HashOfBlob> blobMap;
     TreeMap<String, String> blobMap;
+    /** The files of this commit, flattened from its trees on first use. */
+    private transient TreeMap<String, String> files;
+    /** Files added (with their blob hash) or removed (with null) since the
+     *  commit was created from its parent and not yet written to trees. */
+    private transient TreeMap<String, String> changes = new TreeMap<>();
     /** Set containing all the files being tracked.
      *
      */
@@ -45,17 +60,82 @@ public class Commit implements Serializable {
         dateCommit = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z").format(date);
         message = "initial commit";
         parentHash = "initParentHash";
-        blobMap = new TreeMap<String, String>();
     }
 
-    public Commit(String givenMessage) {
+    public Commit(String givenMessage, String parentCommitHash, Commit parent) {
         //Meta:
         author = System.getProperty("user.dir");
         Date date = new Date();
         dateCommit = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z").format(date);
         message = givenMessage;
-        parentHash = Saving.commitHash(Saving.getStagingArea().headCommit);
-        // blob stuff:
-        blobMap = Saving.getStagingArea().headCommit.blobMap;
+        parentHash = parentCommitHash;
+        // blob stuff: the parent's trees, shared until files are changed
+        treeHash = parent.treeHash();
+    }
+
+    /** A commit read back from the store, with the given fields. */
+    Commit(String author, String dateCommit, String message, String parentHash,
+           String treeHash, TreeMap<String, String> blobMap) {
+        this.author = author;
+        this.dateCommit = dateCommit;
+        this.message = message;
+        this.parentHash = parentHash;
+        this.treeHash = treeHash;
+        this.blobMap = blobMap;
+    }
+
+    /** Returns the hash of this commit's root tree. A commit stored before
+     *  trees gets its trees written now. */
+    String treeHash() {
+        if (treeHash == null && blobMap != null) {
+            treeHash = Tree.write(blobMap);
+        }
+        return treeHash;
+    }
+
+    /** Returns the files captured in this commit, by name, with the hashes
+     *  of their blobs. */
+    TreeMap<String, String> files() {
+        if (blobMap != null) {
+            return blobMap;
+        }
+        if (files == null) {
+            files = treeHash == null ? new TreeMap<>() : Tree.flatten(treeHash);
+            if (changes != null) {
+                for (Map.Entry<String, String> change : changes.entrySet()) {
+                    if (change.getValue() == null) {
+                        files.remove(change.getKey());
+                    } else {
+                        files.put(change.getKey(), change.getValue());
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    /** Captures the blob BLOBHASH as the file FILENAME in this commit. */
+    void put(String fileName, String blobHash) {
+        changes.put(fileName, blobHash);
+        if (files != null) {
+            files.put(fileName, blobHash);
+        }
+    }
+
+    /** Stops capturing the file FILENAME in this commit. */
+    void remove(String fileName) {
+        changes.put(fileName, null);
+        if (files != null) {
+            files.remove(fileName);
+        }
+    }
+
+    /** Writes the trees of the directories changed in this commit, sharing
+     *  the rest with its parent, and records the root. */
+    void writeTrees() {
+        if (changes != null && (treeHash == null || !changes.isEmpty())) {
+            treeHash = Tree.update(treeHash, changes);
+            changes.clear();
+        }
     }
 }
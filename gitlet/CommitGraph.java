@@ -0,0 +1,575 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static gitlet.Utils.join;
+
+/** The commit graph: the ancestry of every commit in two memory-mapped
+ *  files, so that history can be walked without reading commit objects.
+ *  The graph file holds
+ *
+ *      magic "GCGR" | version (4 bytes) | number of records in the table
+ *          below, INDEXED (4 bytes)
+ *      fanout: 256 4-byte counts; entry b is the number of table entries
+ *          whose hash starts with a byte <= b
+ *      table: for the first INDEXED records, the raw 20-byte hash and
+ *          the position (4 bytes) of the record, sorted by hash
+ *      one RECORD_SIZE record per commit, parents before children:
+ *          raw 20-byte hash | first parent | second parent (positions of
+ *          records, or NO_PARENT) | timestamp in ms (8 bytes) |
+ *          generation (4 bytes) | offset in the messages file (8 bytes)
+ *
+ *  and the messages file holds, for each commit, the length and UTF-8 bytes
+ *  of its date string and then of its message. A root commit has
+ *  generation 1, and every other commit one more than its parents' largest.
+ *  Each commit appends a record; a missing or stale graph is rebuilt from
+ *  the commit objects. A hash is looked up by binary search in its fanout
+ *  bucket of the table, and then among the records appended since the
+ *  table was written, at most TAIL_LIMIT of them: once there are more, the
+ *  file is written again with all of them in the table.
+ *
+ *  @author Natalia Ramirez
+ */
+class CommitGraph {
+    static final byte[] MAGIC = {'G', 'C', 'G', 'R'};
+    static final int VERSION = 2;
+    /** Parent position of a commit without that parent. */
+    static final int NO_PARENT = -1;
+    /** Records appended after the table that are looked up one by one. */
+    static final int TAIL_LIMIT = 256;
+    /** Position of the fanout in the graph file. */
+    private static final int FANOUT_START = 12;
+    /** Position of the table in the graph file. */
+    private static final int TABLE_START = FANOUT_START + 256 * 4;
+    /** Size of one entry of the table. */
+    private static final int ENTRY_SIZE = PackIndex.HASH_BYTES + 4;
+    /** Size of one commit's record. */
+    private static final int RECORD_SIZE = PackIndex.HASH_BYTES + 4 + 4 + 8 + 4 + 8;
+
+    /** The graph as of the last change, mapped on first use. */
+    private static CommitGraph loaded;
+
+    /** The stamp of the graph file when it was mapped. */
+    private final String stamp;
+    /** The graph file. */
+    private final MappedByteBuffer records;
+    /** The messages file. */
+    private final MappedByteBuffer messages;
+    /** Version of the graph file. */
+    private final int version;
+    /** Number of records in the table. */
+    private final int indexed;
+    /** Position of the first record in the graph file. */
+    private final int recordsStart;
+    /** Number of commits in the graph. */
+    private final int count;
+
+    /** Maps the graph and messages files. */
+    private CommitGraph() {
+        stamp = Utils.stamp(Repository.COMMIT_GRAPH);
+        records = map(Repository.COMMIT_GRAPH);
+        messages = map(Repository.COMMIT_MESSAGES);
+        for (int i = 0; i < MAGIC.length; i += 1) {
+            if (records.limit() < 8 || records.get(i) != MAGIC[i]) {
+                throw Utils.error("%s is not a commit graph.", Repository.COMMIT_GRAPH.getName());
+            }
+        }
+        version = records.getInt(MAGIC.length);
+        if (version != VERSION) {
+            // rebuilt by get
+            indexed = recordsStart = count = 0;
+            return;
+        }
+        indexed = records.getInt(8);
+        recordsStart = TABLE_START + indexed * ENTRY_SIZE;
+        count = (records.limit() - recordsStart) / RECORD_SIZE;
+    }
+
+    /** Returns the commit graph of the repository, building it first if the
+     *  repository does not have one yet or has one written by an older
+     *  version. */
+    static synchronized CommitGraph get() {
+        if (loaded == null) {
+            if (!Repository.COMMIT_GRAPH.exists() || !Repository.COMMIT_MESSAGES.exists()) {
+                rebuild();
+            }
+            loaded = new CommitGraph();
+            if (loaded.version != VERSION) {
+                rebuild();
+                loaded = new CommitGraph();
+            }
+        }
+        return loaded;
+    }
+
+    /** Forgets the mapped graph if another process has changed it since. */
+    static synchronized void refresh() {
+        if (loaded != null && !String.valueOf(loaded.stamp).equals(
+                Utils.stamp(Repository.COMMIT_GRAPH))) {
+            loaded = null;
+        }
+    }
+
+    /** Returns the position of the commit HASH, rebuilding the graph if it
+     *  does not hold that commit, or -1 if there is no such commit. */
+    static synchronized int position(String hash) {
+        int i = get().find(hash);
+        if (i < 0 && ObjectStore.containsCommit(hash)) {
+            rebuild();
+            i = get().find(hash);
+        }
+        return i;
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        return count;
+    }
+
+    /** Returns the position of the commit HASH, or -1 if the graph does not
+     *  hold it. */
+    int find(String hash) {
+        if (hash.length() != 2 * PackIndex.HASH_BYTES || !hash.matches("[0-9a-f]+")) {
+            return -1;
+        }
+        int bucket = Integer.parseInt(hash.substring(0, 2), 16);
+        int lo = bucket == 0 ? 0 : records.getInt(FANOUT_START + 4 * (bucket - 1));
+        int hi = records.getInt(FANOUT_START + 4 * bucket) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(entryStart(mid), hash);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return records.getInt(entryStart(mid) + PackIndex.HASH_BYTES);
+            }
+        }
+        for (int i = count - 1; i >= indexed; i -= 1) {
+            if (compare(recordStart(i), hash) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Adds to MATCHES the hashes of the commits that start with the
+     *  hexadecimal PREFIX and are not in MATCHES already, stopping once
+     *  MATCHES holds LIMIT hashes. */
+    void findPrefix(String prefix, List<String> matches, int limit) {
+        int lo = 0;
+        int hi = indexed;
+        // first entry whose hash does not sort before PREFIX
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(entryStart(mid), prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int j = lo; j < indexed && compare(entryStart(j), prefix) == 0; j += 1) {
+            add(hash(records.getInt(entryStart(j) + PackIndex.HASH_BYTES)), matches, limit);
+        }
+        for (int i = indexed; i < count; i += 1) {
+            if (compare(recordStart(i), prefix) == 0) {
+                add(hash(i), matches, limit);
+            }
+        }
+    }
+
+    /** Adds HASH to MATCHES unless it is there already or MATCHES holds LIMIT
+     *  hashes. */
+    private static void add(String hash, List<String> matches, int limit) {
+        if (matches.size() < limit && !matches.contains(hash)) {
+            matches.add(hash);
+        }
+    }
+
+    /** Compares the raw hash at position START of the graph file, cut to the
+     *  length of the hexadecimal PREFIX, with PREFIX. */
+    private int compare(int start, String prefix) {
+        for (int j = 0; j < prefix.length(); j += 1) {
+            int b = records.get(start + j / 2) & 0xff;
+            int stored = j % 2 == 0 ? b >> 4 : b & 0xf;
+            int wanted = Character.digit(prefix.charAt(j), 16);
+            if (stored != wanted) {
+                return stored - wanted;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the hash of the commit at position I. */
+    String hash(int i) {
+        int start = recordStart(i);
+        char[] hex = new char[2 * PackIndex.HASH_BYTES];
+        for (int k = 0; k < PackIndex.HASH_BYTES; k += 1) {
+            int b = records.get(start + k) & 0xff;
+            hex[2 * k] = Character.forDigit(b >> 4, 16);
+            hex[2 * k + 1] = Character.forDigit(b & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    /** Returns the position of the first parent of commit I, or NO_PARENT. */
+    int parent(int i) {
+        return records.getInt(recordStart(i) + PackIndex.HASH_BYTES);
+    }
+
+    /** Returns the position of the second parent of commit I, or NO_PARENT. */
+    int secondParent(int i) {
+        return records.getInt(recordStart(i) + PackIndex.HASH_BYTES + 4);
+    }
+
+    /** Returns when commit I was made, in milliseconds since the epoch. */
+    long timestamp(int i) {
+        return records.getLong(recordStart(i) + PackIndex.HASH_BYTES + 8);
+    }
+
+    /** Returns the generation number of commit I. */
+    int generation(int i) {
+        return records.getInt(recordStart(i) + PackIndex.HASH_BYTES + 16);
+    }
+
+    /** Returns the date string of commit I, as log prints it. */
+    String date(int i) {
+        return string(messageStart(i));
+    }
+
+    /** Returns the message of commit I. */
+    String message(int i) {
+        int start = messageStart(i);
+        return string(start + 4 + messages.getInt(start));
+    }
+
+    /** True if the commit at position ANCESTOR is the commit at position
+     *  DESCENDANT or one of its ancestors. Commits whose generation is below
+     *  ANCESTOR's cannot lead to it and are not followed. */
+    boolean isAncestor(int ancestor, int descendant) {
+        int floor = generation(ancestor);
+        boolean[] seen = new boolean[count];
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(descendant);
+        while (!pending.isEmpty()) {
+            int i = pending.pop();
+            if (i == ancestor) {
+                return true;
+            }
+            if (seen[i] || generation(i) <= floor) {
+                continue;
+            }
+            seen[i] = true;
+            for (int p : new int[] {parent(i), secondParent(i)}) {
+                if (p != NO_PARENT) {
+                    pending.push(p);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the position of a latest common ancestor of the commits at
+     *  positions A and B: one that is not an ancestor of any other common
+     *  ancestor. Commits are visited in decreasing generation, so every
+     *  child of a commit is visited before it, and the first commit reached
+     *  from both sides is the answer. */
+    int mergeBase(int a, int b) {
+        byte[] flags = new byte[count];
+        PriorityQueue<Integer> pending = new PriorityQueue<>(
+            (i, j) -> generation(j) != generation(i)
+                ? Integer.compare(generation(j), generation(i)) : Integer.compare(j, i));
+        flags[a] |= 1;
+        flags[b] |= 2;
+        pending.add(a);
+        if (b != a) {
+            pending.add(b);
+        }
+        while (!pending.isEmpty()) {
+            int i = pending.poll();
+            if (flags[i] == 3) {
+                return i;
+            }
+            for (int p : new int[] {parent(i), secondParent(i)}) {
+                if (p != NO_PARENT) {
+                    if (flags[p] == 0) {
+                        pending.add(p);
+                    }
+                    flags[p] |= flags[i];
+                }
+            }
+        }
+        return NO_PARENT;
+    }
+
+    /** Adds COMMIT, whose hash is HASH, to the graph. The graph is rebuilt
+     *  if it does not hold the commit's parents. */
+    static synchronized void append(String hash, Commit commit) {
+        CommitGraph graph = get();
+        if (graph.find(hash) >= 0) {
+            // written before, by a commit identical to this one
+            return;
+        }
+        List<String> parentHashes = parentHashes(commit);
+        int[] parents = {NO_PARENT, NO_PARENT};
+        int generation = 1;
+        for (int k = 0; k < parentHashes.size(); k += 1) {
+            parents[k] = graph.find(parentHashes.get(k));
+            if (parents[k] < 0) {
+                rebuild();
+                return;
+            }
+            generation = Math.max(generation, graph.generation(parents[k]) + 1);
+        }
+        try (FileChannel messageFile = FileChannel.open(Repository.COMMIT_MESSAGES.toPath(),
+                StandardOpenOption.WRITE);
+             FileChannel graphFile = FileChannel.open(Repository.COMMIT_GRAPH.toPath(),
+                StandardOpenOption.WRITE)) {
+            // the message goes first, so a record never points past the
+            // end of the messages file; a torn record is overwritten
+            long messageOffset = messageFile.size();
+            writeFully(messageFile, ByteBuffer.wrap(messageEntry(commit)), messageOffset);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            record.put(rawHash(hash)).putInt(parents[0]).putInt(parents[1])
+                    .putLong(timestamp(commit)).putInt(generation).putLong(messageOffset);
+            record.flip();
+            writeFully(graphFile, record, graph.recordStart(graph.count));
+        } catch (IOException excp) {
+            throw Utils.error("Could not write the commit graph: %s", excp.getMessage());
+        }
+        loaded = null;
+        if (graph.count + 1 - graph.indexed > TAIL_LIMIT) {
+            compact();
+        }
+    }
+
+    /** Writes the graph again with every record in the table. */
+    private static void compact() {
+        CommitGraph graph = get();
+        List<String> hashes = new ArrayList<>(graph.count);
+        for (int i = 0; i < graph.count; i += 1) {
+            hashes.add(graph.hash(i));
+        }
+        byte[] records = new byte[graph.count * RECORD_SIZE];
+        graph.records.get(graph.recordsStart, records);
+        replace(Repository.COMMIT_GRAPH, encode(hashes, records));
+        loaded = null;
+    }
+
+    /** Returns the graph file for the commits with hashes HASHES, whose
+     *  records, in the same order, are RECORDS, all of them in the table. */
+    private static byte[] encode(List<String> hashes, byte[] records) {
+        Integer[] sorted = new Integer[hashes.size()];
+        int[] fanout = new int[256];
+        for (int i = 0; i < sorted.length; i += 1) {
+            sorted[i] = i;
+            fanout[Integer.parseInt(hashes.get(i).substring(0, 2), 16)] += 1;
+        }
+        // lower-case hex sorts as the raw bytes do
+        Arrays.sort(sorted, (a, b) -> hashes.get(a).compareTo(hashes.get(b)));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.length);
+            int total = 0;
+            for (int n : fanout) {
+                total += n;
+                out.writeInt(total);
+            }
+            for (int i : sorted) {
+                out.write(rawHash(hashes.get(i)));
+                out.writeInt(i);
+            }
+            out.write(records);
+        } catch (IOException excp) {
+            throw Utils.error("Could not write the commit graph: %s", excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Writes the graph of every commit in the object store from scratch. */
+    static synchronized void rebuild() {
+        Map<String, Commit> commits = new HashMap<>();
+        for (String hash : ObjectStore.allCommitHashes()) {
+            commits.put(hash, ObjectStore.readCommit(hash));
+        }
+        // order the commits so that parents come before their children
+        List<String> order = new ArrayList<>();
+        Map<String, Integer> positions = new HashMap<>();
+        for (String start : ObjectStore.allCommitHashes()) {
+            Deque<String> pending = new ArrayDeque<>();
+            pending.push(start);
+            while (!pending.isEmpty()) {
+                String hash = pending.peek();
+                if (positions.containsKey(hash)) {
+                    pending.pop();
+                    continue;
+                }
+                boolean ready = true;
+                for (String parent : parentHashes(commits.get(hash))) {
+                    if (commits.containsKey(parent) && !positions.containsKey(parent)) {
+                        pending.push(parent);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    pending.pop();
+                    positions.put(hash, order.size());
+                    order.add(hash);
+                }
+            }
+        }
+        ByteArrayOutputStream graph = new ByteArrayOutputStream();
+        ByteArrayOutputStream messageBytes = new ByteArrayOutputStream();
+        int[] generations = new int[order.size()];
+        try {
+            DataOutputStream out = new DataOutputStream(graph);
+            for (int i = 0; i < order.size(); i += 1) {
+                String hash = order.get(i);
+                Commit commit = commits.get(hash);
+                int[] parents = {NO_PARENT, NO_PARENT};
+                generations[i] = 1;
+                List<String> parentHashes = parentHashes(commit);
+                for (int k = 0; k < parentHashes.size(); k += 1) {
+                    Integer p = positions.get(parentHashes.get(k));
+                    if (p != null) {
+                        parents[k] = p;
+                        generations[i] = Math.max(generations[i], generations[p] + 1);
+                    }
+                }
+                out.write(rawHash(hash));
+                out.writeInt(parents[0]);
+                out.writeInt(parents[1]);
+                out.writeLong(timestamp(commit));
+                out.writeInt(generations[i]);
+                out.writeLong(messageBytes.size());
+                messageBytes.write(messageEntry(commit));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not write the commit graph: %s", excp.getMessage());
+        }
+        replace(Repository.COMMIT_MESSAGES, messageBytes.toByteArray());
+        replace(Repository.COMMIT_GRAPH, encode(order, graph.toByteArray()));
+        loaded = null;
+    }
+
+    /** Returns the hashes of the parents of COMMIT. */
+    static List<String> parentHashes(Commit commit) {
+        List<String> parents = new ArrayList<>();
+        if (!commit.parentHash.equals("initParentHash")) {
+            parents.add(commit.parentHash);
+        }
+        if (commit.secondParentHash != null) {
+            parents.add(commit.secondParentHash);
+        }
+        return parents;
+    }
+
+    /** Returns when COMMIT was made, in milliseconds since the epoch. */
+    private static long timestamp(Commit commit) {
+        try {
+            return new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z")
+                    .parse(commit.dateCommit).getTime();
+        } catch (ParseException excp) {
+            return 0;
+        }
+    }
+
+    /** Returns the entry of the messages file for COMMIT. */
+    private static byte[] messageEntry(Commit commit) {
+        byte[] date = commit.dateCommit.getBytes(StandardCharsets.UTF_8);
+        byte[] message = commit.message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(8 + date.length + message.length);
+        entry.putInt(date.length).put(date).putInt(message.length).put(message);
+        return entry.array();
+    }
+
+    /** Returns the string whose length and bytes start at position START of
+     *  the messages file. */
+    private String string(int start) {
+        byte[] bytes = new byte[messages.getInt(start)];
+        for (int k = 0; k < bytes.length; k += 1) {
+            bytes[k] = messages.get(start + 4 + k);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the position of commit I's entry in the messages file. */
+    private int messageStart(int i) {
+        return (int) records.getLong(recordStart(i) + PackIndex.HASH_BYTES + 20);
+    }
+
+    /** Returns the position of the record of commit I in the graph file. */
+    private int recordStart(int i) {
+        return recordsStart + i * RECORD_SIZE;
+    }
+
+    /** Returns the position of entry J of the table in the graph file. */
+    private static int entryStart(int j) {
+        return TABLE_START + j * ENTRY_SIZE;
+    }
+
+    /** Returns the raw bytes of the hexadecimal HASH. */
+    private static byte[] rawHash(String hash) {
+        byte[] raw = new byte[PackIndex.HASH_BYTES];
+        for (int k = 0; k < raw.length; k += 1) {
+            raw[k] = (byte) Integer.parseInt(hash.substring(2 * k, 2 * k + 2), 16);
+        }
+        return raw;
+    }
+
+    /** Maps all of FILE for reading. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw Utils.error("Could not read %s: %s", file.getName(), excp.getMessage());
+        }
+    }
+
+    /** Writes all of BUFFER to CHANNEL at POSITION. */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer,
+                                   long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /** Replaces FILE with CONTENTS through a rename. The temporary file is
+     *  named after the process, since a command that only reads may rebuild
+     *  the graph without holding the RepositoryLock. */
+    private static void replace(File file, byte[] contents) {
+        File temp = join(file.getParentFile(),
+                "." + file.getName() + "." + ProcessHandle.current().pid() + ".tmp");
+        Utils.writeContents(temp, contents);
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Could not write %s: %s", file.getName(), excp.getMessage());
+        }
+    }
+}
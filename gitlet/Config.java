@@ -0,0 +1,53 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** Tunable settings. Each setting NAME is taken from the option
+ *  -c NAME=VALUE of the command, then from the environment variable
+ *  GITLET_NAME (upper case, dots replaced by underscores) and then from the
+ *  system property gitlet.NAME, falling back to a default.
+ *
+ *  @author Natalia Ramirez
+ */
+class Config {
+    /** Settings given on the command line of the running command. */
+    private static Map<String, String> overrides = new HashMap<>();
+
+    /** Deflate level for stored objects, from 0 (store only) to 9. */
+    static int compressionLevel() {
+        return intSetting("compression.level", 6, 0, 9);
+    }
+
+    /** Makes SETTINGS, from setting names to values, those of the running
+     *  command, in place of those of the previous one. */
+    static void override(Map<String, String> settings) {
+        overrides = settings;
+    }
+
+    /** Returns the raw value of setting NAME, or null if it is unset. */
+    static String setting(String name) {
+        if (overrides.containsKey(name)) {
+            return overrides.get(name);
+        }
+        String env = System.getenv("GITLET_" + name.toUpperCase().replace('.', '_'));
+        if (env != null && !env.isEmpty()) {
+            return env;
+        }
+        return System.getProperty("gitlet." + name);
+    }
+
+    /** Returns integer setting NAME clamped to [MIN, MAX], or DEFAULTVALUE if
+     *  it is unset or not a number. */
+    static int intSetting(String name, int defaultValue, int min, int max) {
+        String value = setting(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(min, Math.min(max, Integer.parseInt(value.trim())));
+        } catch (NumberFormatException excp) {
+            return defaultValue;
+        }
+    }
+}
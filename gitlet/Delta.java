@@ -0,0 +1,155 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Binary deltas between two versions of a blob. A delta is a list of
+ *  instructions that rebuild the target from the base:
+ *
+ *      COPY offset length      copy LENGTH bytes of the base from OFFSET
+ *      INSERT length bytes     append the LENGTH literal bytes that follow
+ *
+ *  preceded by the sizes of the base and of the target. All numbers are
+ *  written as variable-length integers.
+ *
+ *  @author Natalia Ramirez
+ */
+class Delta {
+    /** Opcode of a copy from the base. */
+    private static final int COPY = 0;
+    /** Opcode of an insertion of literal bytes. */
+    private static final int INSERT = 1;
+    /** Length of the blocks of the base that are indexed for matching. */
+    private static final int BLOCK = 16;
+
+    /** Returns the delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarLong(out, base.length);
+        writeVarLong(out, target.length);
+
+        // index the base by the hash of every aligned block
+        Map<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(blockHash(base, i), i);
+        }
+
+        int insertStart = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer candidate = blocks.get(blockHash(target, i));
+            if (candidate == null || !matches(base, candidate, target, i, BLOCK)) {
+                i += 1;
+                continue;
+            }
+            int baseStart = candidate;
+            int targetStart = i;
+            // grow the match backwards into the pending insertion...
+            while (baseStart > 0 && targetStart > insertStart
+                    && base[baseStart - 1] == target[targetStart - 1]) {
+                baseStart -= 1;
+                targetStart -= 1;
+            }
+            // ...and forwards as far as it goes
+            int length = i - targetStart + BLOCK;
+            while (baseStart + length < base.length && targetStart + length < target.length
+                    && base[baseStart + length] == target[targetStart + length]) {
+                length += 1;
+            }
+            writeInsert(out, target, insertStart, targetStart);
+            out.write(COPY);
+            writeVarLong(out, baseStart);
+            writeVarLong(out, length);
+            i = targetStart + length;
+            insertStart = i;
+        }
+        writeInsert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = new int[1];
+        long baseSize = readVarLong(delta, pos);
+        if (baseSize != base.length) {
+            throw Utils.error("Delta does not apply to its base.");
+        }
+        byte[] result = new byte[(int) readVarLong(delta, pos)];
+        int size = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int offset = (int) readVarLong(delta, pos);
+                int length = (int) readVarLong(delta, pos);
+                System.arraycopy(base, offset, result, size, length);
+                size += length;
+            } else {
+                int length = (int) readVarLong(delta, pos);
+                System.arraycopy(delta, pos[0], result, size, length);
+                pos[0] += length;
+                size += length;
+            }
+        }
+        if (size != result.length) {
+            throw Utils.error("Delta is corrupt.");
+        }
+        return result;
+    }
+
+    /** Writes an INSERT of TARGET[FROM..TO) to OUT, if that range is not
+     *  empty. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeVarLong(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Returns the hash of the BLOCK bytes of DATA starting at START. */
+    private static int blockHash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = 31 * h + data[i];
+        }
+        return h;
+    }
+
+    /** True if the LENGTH bytes of A at AI equal those of B at BI. */
+    private static boolean matches(byte[] a, int ai, byte[] b, int bi, int length) {
+        for (int k = 0; k < length; k += 1) {
+            if (a[ai + k] != b[bi + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* VARIABLE-LENGTH INTEGERS */
+
+    /** Writes the non-negative VALUE to OUT, seven bits per byte, low bits
+     *  first. */
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while (value >= 0x80) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Reads a number written by writeVarLong from DATA at POS[0], and
+     *  advances POS[0] past it. */
+    static long readVarLong(byte[] data, int[] pos) {
+        long value = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            value |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+    }
+}
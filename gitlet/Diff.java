@@ -0,0 +1,474 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+import static gitlet.Utils.join;
+
+/** Line diffs in the unified format. Each pair of files is compared with
+ *  Myers' O(ND) algorithm in its linear-space form, and hunks are written
+ *  as soon as they are found. Stored blobs are streamed from the store and
+ *  working files are memory-mapped.
+ *
+ *  Files are compared a window of lines at a time. Normally the window
+ *  holds whole files, but files longer than the setting "diff.window"
+ *  (GITLET_DIFF_WINDOW, in lines) are compared window by window, which
+ *  bounds the memory used at the cost of a diff that need not be the
+ *  shortest one across window boundaries.
+ *
+ *  @author Natalia Ramirez
+ */
+class Diff {
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+    /** Number of bytes looked at to tell a binary file. */
+    private static final int BINARY_PROBE = 8000;
+
+    /** Returns the most lines of each file held in memory at once. */
+    static int window() {
+        return Config.intSetting("diff.window", 1 << 20, 2 * CONTEXT + 1, Integer.MAX_VALUE);
+    }
+
+    /** Writes to OUT the diff of every file whose blob hash differs between
+     *  FROM and TO, maps from paths to blob hashes, in path order. The
+     *  files of TO are read from the working tree if WORKTREE. */
+    static void files(Map<String, String> from, Map<String, String> to, boolean workTree,
+                      OutputStream out) throws IOException {
+        TreeSet<String> paths = new TreeSet<>(from.keySet());
+        paths.addAll(to.keySet());
+        for (String path : paths) {
+            String fromHash = from.get(path);
+            String toHash = to.get(path);
+            if (Objects.equals(fromHash, toHash)) {
+                continue;
+            }
+            try (Lines a = fromHash == null ? Lines.EMPTY : Lines.blob(fromHash);
+                 Lines b = toHash == null ? Lines.EMPTY
+                         : workTree ? Lines.map(join(Repository.CWD, path)) : Lines.blob(toHash)) {
+                file(path, fromHash == null, toHash == null, a, b, out);
+            }
+        }
+    }
+
+    /** Writes to OUT the diff of the file PATH from the lines A to the lines
+     *  B. ADDED and DELETED tell that one side does not have the file. */
+    static void file(String path, boolean added, boolean deleted, Lines a, Lines b,
+                     OutputStream out) throws IOException {
+        print(out, "diff --gitlet a/" + path + " b/" + path + "\n");
+        if (added) {
+            print(out, "new file\n");
+        } else if (deleted) {
+            print(out, "deleted file\n");
+        }
+        int window = window();
+        List<byte[]> aLines = a.take(window);
+        List<byte[]> bLines = b.take(window);
+        if (isBinary(aLines) || isBinary(bLines)) {
+            print(out, "Binary files " + (added ? "/dev/null" : "a/" + path) + " and "
+                    + (deleted ? "/dev/null" : "b/" + path) + " differ\n");
+            return;
+        }
+        print(out, "--- " + (added ? "/dev/null" : "a/" + path) + "\n");
+        print(out, "+++ " + (deleted ? "/dev/null" : "b/" + path) + "\n");
+        int aStart = 0;
+        int bStart = 0;
+        while (!aLines.isEmpty() || !bLines.isEmpty()) {
+            // a side is used up once it no longer fills the window
+            boolean last = aLines.size() < window && bLines.size() < window;
+            int[] next = new Comparison(aLines, bLines).write(aStart, bStart, last,
+                    window / 2, out);
+            aStart += next[0];
+            bStart += next[1];
+            aLines = new ArrayList<>(aLines.subList(next[0], aLines.size()));
+            bLines = new ArrayList<>(bLines.subList(next[1], bLines.size()));
+            aLines.addAll(a.take(window - aLines.size()));
+            bLines.addAll(b.take(window - bLines.size()));
+        }
+    }
+
+    /** True if LINES, the start of a file, look like binary data. */
+    private static boolean isBinary(List<byte[]> lines) {
+        int seen = 0;
+        for (byte[] line : lines) {
+            for (byte c : line) {
+                if (c == 0) {
+                    return true;
+                }
+            }
+            seen += line.length;
+            if (seen >= BINARY_PROBE) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /** Writes S to OUT. */
+    private static void print(OutputStream out, String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The comparison of two windows of lines. */
+    private static class Comparison {
+        /** The lines of each side. */
+        private final List<byte[]> aLines;
+        private final List<byte[]> bLines;
+        /** The lines of each side as numbers, equal for equal lines. */
+        private final int[] a;
+        private final int[] b;
+        /** Lines of A deleted, and lines of B inserted, by the diff. */
+        private final boolean[] deleted;
+        private final boolean[] inserted;
+
+        /** Compares ALINES with BLINES. */
+        Comparison(List<byte[]> aLines, List<byte[]> bLines) {
+            this.aLines = aLines;
+            this.bLines = bLines;
+            Map<ByteBuffer, Integer> ids = new HashMap<>();
+            a = number(aLines, ids);
+            b = number(bLines, ids);
+            deleted = new boolean[a.length];
+            inserted = new boolean[b.length];
+            compare(0, a.length, 0, b.length);
+        }
+
+        /** Returns the numbers of LINES, numbering new lines through IDS. */
+        private static int[] number(List<byte[]> lines, Map<ByteBuffer, Integer> ids) {
+            int[] numbers = new int[lines.size()];
+            for (int i = 0; i < numbers.length; i += 1) {
+                Integer id = ids.putIfAbsent(ByteBuffer.wrap(lines.get(i)), ids.size());
+                numbers[i] = id == null ? ids.size() - 1 : id;
+            }
+            return numbers;
+        }
+
+        /** Marks the lines of A[ALO, AHI) and B[BLO, BHI) that a shortest
+         *  edit script deletes or inserts. */
+        private void compare(int aLo, int aHi, int bLo, int bHi) {
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+                aLo += 1;
+                bLo += 1;
+            }
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+                aHi -= 1;
+                bHi -= 1;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                for (int i = aLo; i < aHi; i += 1) {
+                    deleted[i] = true;
+                }
+                for (int j = bLo; j < bHi; j += 1) {
+                    inserted[j] = true;
+                }
+                return;
+            }
+            int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+            compare(aLo, snake[0], bLo, snake[1]);
+            compare(snake[2], aHi, snake[3], bHi);
+        }
+
+        /** Returns the start and end {x0, y0, x1, y1} of the middle snake
+         *  of a shortest edit script from A[ALO, AHI) to B[BLO, BHI), which
+         *  must both be non-empty and differ in their first and last lines.
+         *  The search runs from both corners at once until the paths meet. */
+        private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+            int n = aHi - aLo;
+            int m = bHi - bLo;
+            int delta = n - m;
+            boolean odd = (delta & 1) != 0;
+            int max = (n + m + 1) / 2 + 1;
+            int offset = max + 1;
+            int[] forward = new int[2 * max + 3];
+            int[] backward = new int[2 * max + 3];
+            for (int d = 0; d <= max; d += 1) {
+                for (int k = -d; k <= d; k += 2) {
+                    int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+                            ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                    int y = x - k;
+                    int x0 = x;
+                    int y0 = y;
+                    while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                        x += 1;
+                        y += 1;
+                    }
+                    forward[offset + k] = x;
+                    if (odd && k >= delta - (d - 1) && k <= delta + (d - 1)
+                            && x + backward[offset + delta - k] >= n) {
+                        return new int[] {aLo + x0, bLo + y0, aLo + x, bLo + y};
+                    }
+                }
+                // the backward search runs on the reversed sequences
+                for (int k = -d; k <= d; k += 2) {
+                    int x = k == -d
+                            || (k != d && backward[offset + k - 1] < backward[offset + k + 1])
+                            ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                    int y = x - k;
+                    int x0 = x;
+                    int y0 = y;
+                    while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                        x += 1;
+                        y += 1;
+                    }
+                    backward[offset + k] = x;
+                    if (!odd && k >= delta - d && k <= delta + d
+                            && x + forward[offset + delta - k] >= n) {
+                        return new int[] {aHi - x, bHi - y, aHi - x0, bHi - y0};
+                    }
+                }
+            }
+            throw new IllegalStateException("no middle snake");
+        }
+
+        /** Returns the changes that take A[0, X) to B[0, Y), grouped into
+         *  hunks. (X, Y) need not lie on the edit path this comparison found:
+         *  where the path leaves that box, the lines of the box it has not
+         *  reached are deleted or inserted. Each change is {first deleted,
+         *  end of deleted, first inserted, end of inserted}; changes less
+         *  than 2 * CONTEXT lines apart share a hunk. */
+        List<List<int[]>> hunks(int x, int y) {
+            List<int[]> changes = new ArrayList<>();
+            int i = 0;
+            int j = 0;
+            while (i < x || j < y) {
+                if (i < x && j < y && !deleted[i] && !inserted[j]) {
+                    i += 1;
+                    j += 1;
+                    continue;
+                }
+                int i0 = i;
+                int j0 = j;
+                if (j == y) {
+                    i = x;
+                } else if (i == x) {
+                    j = y;
+                } else {
+                    while (i < x && deleted[i]) {
+                        i += 1;
+                    }
+                    while (j < y && inserted[j]) {
+                        j += 1;
+                    }
+                }
+                int[] previous = changes.isEmpty() ? null : changes.get(changes.size() - 1);
+                if (previous != null && previous[1] == i0 && previous[3] == j0) {
+                    previous[1] = i;
+                    previous[3] = j;
+                } else {
+                    changes.add(new int[] {i0, i, j0, j});
+                }
+            }
+            List<List<int[]>> hunks = new ArrayList<>();
+            for (int first = 0; first < changes.size();) {
+                int last = first;
+                while (last + 1 < changes.size()
+                        && changes.get(last + 1)[0] - changes.get(last)[1] <= 2 * CONTEXT) {
+                    last += 1;
+                }
+                hunks.add(changes.subList(first, last + 1));
+                first = last + 1;
+            }
+            return hunks;
+        }
+
+        /** Writes the hunks of this comparison to OUT, numbering the lines
+         *  of each side from ASTART and BSTART, and returns where the next
+         *  window should start on each side, {a, b}. Unless LAST, the lines
+         *  that follow the window may change the last hunk, so that hunk is
+         *  left to the next window whole, with its leading context, as long
+         *  as that is no more than LIMIT lines of either side. A longer one
+         *  is cut where LIMIT lines of each side are left. */
+        int[] write(int aStart, int bStart, boolean last, int limit,
+                    OutputStream out) throws IOException {
+            int[] next = {a.length, b.length};
+            if (!last) {
+                List<List<int[]>> hunks = hunks(a.length, b.length);
+                List<int[]> open = hunks.isEmpty() ? null : hunks.get(hunks.size() - 1);
+                if (open == null || a.length - open.get(open.size() - 1)[1] > 2 * CONTEXT) {
+                    // the leading context of whatever follows
+                    next = new int[] {Math.max(0, a.length - CONTEXT),
+                        Math.max(0, b.length - CONTEXT)};
+                } else {
+                    int before = Math.min(CONTEXT, open.get(0)[0]);
+                    next = new int[] {open.get(0)[0] - before, open.get(0)[2] - before};
+                    if (a.length - next[0] > limit || b.length - next[1] > limit) {
+                        next = new int[] {Math.max(next[0], a.length - limit),
+                            Math.max(next[1], b.length - limit)};
+                    }
+                }
+            }
+            for (List<int[]> hunk : hunks(next[0], next[1])) {
+                hunk(hunk, next[0], aStart, bStart, last, out);
+            }
+            return next;
+        }
+
+        /** Writes the hunk made of CHANGES, which end at or before line X of
+         *  A, to OUT, numbering the lines of each side from ASTART and BSTART.
+         *  ATEND tells that the window ends with the files. Patch takes a hunk
+         *  with less context on one side than the other to sit at that end
+         *  of the file, so context is cut to the same length on both sides
+         *  unless the hunk is at the start or the end of the files. */
+        private void hunk(List<int[]> changes, int x, int aStart, int bStart, boolean atEnd,
+                          OutputStream out) throws IOException {
+            int[] first = changes.get(0);
+            int[] last = changes.get(changes.size() - 1);
+            int before = Math.min(CONTEXT, first[0]);
+            int after = Math.min(CONTEXT, x - last[1]);
+            boolean atStart = aStart + first[0] == before && bStart + first[2] == before;
+            boolean atFileEnd = atEnd && last[1] + after == a.length
+                    && last[3] + after == b.length;
+            if (before < after && !atStart) {
+                after = before;
+            } else if (after < before && !atFileEnd) {
+                before = after;
+            }
+            int aFrom = first[0] - before;
+            int aTo = last[1] + after;
+            int bFrom = first[2] - before;
+            int bTo = last[3] + after;
+            print(out, "@@ -" + range(aStart + aFrom, aTo - aFrom)
+                    + " +" + range(bStart + bFrom, bTo - bFrom) + " @@\n");
+            int k = aFrom;
+            for (int[] change : changes) {
+                for (; k < change[0]; k += 1) {
+                    line(out, ' ', aLines.get(k), atEnd && k == a.length - 1);
+                }
+                for (int i = change[0]; i < change[1]; i += 1) {
+                    line(out, '-', aLines.get(i), atEnd && i == a.length - 1);
+                }
+                for (int j = change[2]; j < change[3]; j += 1) {
+                    line(out, '+', bLines.get(j), atEnd && j == b.length - 1);
+                }
+                k = change[1];
+            }
+            for (; k < aTo; k += 1) {
+                line(out, ' ', aLines.get(k), atEnd && k == a.length - 1);
+            }
+        }
+
+        /** Returns the line range of a hunk header for COUNT lines starting
+         *  after line START. */
+        private static String range(int start, int count) {
+            if (count == 1) {
+                return Integer.toString(start + 1);
+            }
+            return (count == 0 ? start : start + 1) + "," + count;
+        }
+
+        /** Writes LINE to OUT after the marker MARK. LAST tells that it is
+         *  the last line of its file, the only one that may lack a newline. */
+        private static void line(OutputStream out, char mark, byte[] line, boolean last)
+                throws IOException {
+            out.write(mark);
+            out.write(line);
+            if (last && (line.length == 0 || line[line.length - 1] != '\n')) {
+                print(out, "\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** The lines of a file, read as they are asked for. Each line keeps its
+     *  terminating newline; the last one may have none. */
+    abstract static class Lines implements Closeable {
+        /** The lines of an empty file. */
+        static final Lines EMPTY = new Lines() {
+            @Override
+            byte[] next() {
+                return null;
+            }
+        };
+
+        /** Returns the next line, or null at the end. */
+        abstract byte[] next() throws IOException;
+
+        /** Returns up to N of the next lines. */
+        List<byte[]> take(int n) throws IOException {
+            List<byte[]> lines = new ArrayList<>();
+            while (lines.size() < n) {
+                byte[] line = next();
+                if (line == null) {
+                    break;
+                }
+                lines.add(line);
+            }
+            return lines;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+
+        /** Returns the lines of the stored or staged blob BLOBHASH. */
+        static Lines blob(String blobHash) {
+            return stream(ObjectStore.openBlob(blobHash));
+        }
+
+        /** Returns the lines of FILE, which is memory-mapped. */
+        static Lines map(File file) throws IOException {
+            ByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    return stream(new FileInputStream(file));
+                }
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            return new Lines() {
+                @Override
+                byte[] next() {
+                    if (!mapped.hasRemaining()) {
+                        return null;
+                    }
+                    int start = mapped.position();
+                    int end = start;
+                    while (end < mapped.limit() && mapped.get(end) != '\n') {
+                        end += 1;
+                    }
+                    byte[] line = new byte[Math.min(end + 1, mapped.limit()) - start];
+                    mapped.get(line);
+                    return line;
+                }
+            };
+        }
+
+        /** Returns the lines read from IN. */
+        static Lines stream(InputStream in) {
+            return new Lines() {
+                private final InputStream buffered = new BufferedInputStream(in);
+                private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+                @Override
+                byte[] next() throws IOException {
+                    line.reset();
+                    for (int c = buffered.read(); c != -1; c = buffered.read()) {
+                        line.write(c);
+                        if (c == '\n') {
+                            break;
+                        }
+                    }
+                    return line.size() == 0 ? null : line.toByteArray();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    buffered.close();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Utils.join;
+import static gitlet.Utils.plainFilenamesIn;
+
+/** The gc command: deletes the loose commits, trees and blobs that neither
+ *  a branch nor the staging area can reach, and the files of the staging
+ *  scratch directory that the staging area no longer refers to, such as
+ *  versions of a file staged and then replaced. Everything reachable is
+ *  marked first, the trees of different commits in parallel, and then the
+ *  rest is swept. Files younger than the grace period, the setting
+ *  "gc.grace" (GITLET_GC_GRACE) in seconds, are kept whatever they hold,
+ *  so that objects a concurrent command has written but not yet made
+ *  reachable survive. Packed objects are left alone.
+ *
+ *  @author Natalia Ramirez
+ */
+class GarbageCollector {
+    /** Grace period used unless the setting says otherwise, in seconds. */
+    static final int GRACE = 60 * 60;
+
+    /** Hashes of the commits, trees and blobs marked reachable. */
+    private final Set<String> commits = ConcurrentHashMap.newKeySet();
+    private final Set<String> trees = ConcurrentHashMap.newKeySet();
+    private final Set<String> blobs = ConcurrentHashMap.newKeySet();
+    /** Blob hashes of the files the staging area refers to. */
+    private final Set<String> staged = ConcurrentHashMap.newKeySet();
+    /** Bytes of the files deleted so far. */
+    private long reclaimed;
+
+    /** Returns the grace period, in seconds. */
+    static int grace() {
+        return Config.intSetting("gc.grace", GRACE, 0, Integer.MAX_VALUE);
+    }
+
+    /** Collects the garbage of the repository and reports what it removed.
+     *  If NOW, there is no grace period. */
+    static void collect(boolean now) {
+        GarbageCollector collector = new GarbageCollector();
+        collector.mark();
+        long cutoff = System.currentTimeMillis() - (now ? 0 : grace() * 1000L);
+        int removedCommits;
+        int removed;
+        int removedStaged;
+        try (Instrumentation.Timer timer = Instrumentation.time("sweep")) {
+            removedCommits = collector.sweep(Repository.COMMIT_DIR, ".txt",
+                    collector.commits, cutoff);
+            removed = removedCommits
+                    + collector.sweep(Repository.TREE_DIR, "", collector.trees, cutoff)
+                    + collector.sweep(Repository.BLOB_DIR, "", collector.blobs, cutoff);
+            removedStaged = collector.sweep(Repository.BLOBS_ADDED, "", collector.staged,
+                    cutoff);
+        }
+        if (removedCommits > 0) {
+            // both still list the commits just deleted
+            CommitGraph.rebuild();
+            MessageIndex.rebuild();
+        }
+        System.out.printf("Removed %d unreachable objects and %d staged files, "
+                + "reclaiming %d bytes.%n", removed, removedStaged, collector.reclaimed);
+    }
+
+    /** Marks every commit reachable from the branches and the staging area,
+     *  then the trees and blobs of those commits. */
+    private void mark() {
+        StagingArea staging = Saving.getStagingArea();
+        List<Integer> heads = new ArrayList<>();
+        for (String name : RepositoryContext.get().branchNames()) {
+            heads.add(CommitGraph.position(Saving.getBranch(name).commitHash));
+        }
+        heads.add(CommitGraph.position(staging.headCommitHash));
+        staged.addAll(staging.stagedToAdd.values());
+        blobs.addAll(staging.stagedToAdd.values());
+        try (Instrumentation.Timer timer = Instrumentation.time("mark")) {
+            CommitGraph graph = CommitGraph.get();
+            boolean[] seen = new boolean[graph.size()];
+            Deque<Integer> pending = new ArrayDeque<>();
+            for (int head : heads) {
+                if (head != CommitGraph.NO_PARENT && !seen[head]) {
+                    seen[head] = true;
+                    pending.push(head);
+                }
+            }
+            while (!pending.isEmpty()) {
+                int i = pending.pop();
+                commits.add(graph.hash(i));
+                for (int p : new int[] {graph.parent(i), graph.secondParent(i)}) {
+                    if (p != CommitGraph.NO_PARENT && !seen[p]) {
+                        seen[p] = true;
+                        pending.push(p);
+                    }
+                }
+            }
+            WorkTree.map(new ArrayList<>(commits), hash -> {
+                markCommit(hash);
+                return null;
+            });
+        }
+    }
+
+    /** Marks the trees and blobs of the commit with hash HASH. */
+    private void markCommit(String hash) {
+        Commit commit = ObjectStore.readCommit(hash);
+        if (commit.blobMap != null) {
+            // stored before trees
+            blobs.addAll(commit.blobMap.values());
+        }
+        if (commit.treeHash != null) {
+            markTree(commit.treeHash);
+        }
+    }
+
+    /** Marks the tree TREEHASH and everything under it, unless another
+     *  commit got there first. */
+    private void markTree(String treeHash) {
+        if (!trees.add(treeHash)) {
+            return;
+        }
+        for (Map.Entry<String, String> entry : Tree.read(treeHash).entries.entrySet()) {
+            if (Tree.isDirectory(entry.getKey())) {
+                markTree(entry.getValue());
+            } else {
+                blobs.add(entry.getValue());
+            }
+        }
+    }
+
+    /** Deletes the files of DIR, named by a hash followed by SUFFIX, whose
+     *  hash is not in LIVE and that were last modified before CUTOFF, in
+     *  milliseconds. Returns the number deleted. */
+    private int sweep(File dir, String suffix, Set<String> live, long cutoff) {
+        List<String> names = plainFilenamesIn(dir);
+        if (names == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (String name : names) {
+            String hash = name.endsWith(suffix)
+                    ? name.substring(0, name.length() - suffix.length()) : name;
+            File file = join(dir, name);
+            if (live.contains(hash) || file.lastModified() >= cutoff) {
+                continue;
+            }
+            long size = file.length();
+            if (file.delete()) {
+                reclaimed += size;
+                removed += 1;
+            }
+        }
+        return removed;
+    }
+}
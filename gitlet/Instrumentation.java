@@ -0,0 +1,176 @@
+package gitlet;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counters and timers for the work one command does, so that it shows
+ *  where a command spends its time and when a change makes it read, hash
+ *  or copy more than it used to. Counters may be bumped from any worker
+ *  thread. Tracing is turned on with the setting "stats" (GITLET_STATS) or
+ *  the flag --trace before the command; the value "json", or --trace=json,
+ *  asks for one JSON object per command instead of a summary. Either way
+ *  the report goes to standard error.
+ *
+ *  @author Natalia Ramirez
+ */
+class Instrumentation {
+    /** What is counted. */
+    enum Counter {
+        /** Loose and packed objects read. */
+        OBJECTS_READ,
+        /** Objects written to the store. */
+        OBJECTS_WRITTEN,
+        /** Files whose contents were read. */
+        FILES_READ,
+        /** Bytes fed to SHA-1. */
+        BYTES_HASHED,
+        /** Bytes of file contents copied into or out of the store. */
+        BYTES_COPIED,
+        /** Files forced to disk. */
+        FSYNCS,
+        /** Objects decoded: the staging index, branches and commits. */
+        DESERIALIZATIONS;
+
+        /** Returns the name of this counter in reports. */
+        String key() {
+            return name().toLowerCase();
+        }
+    }
+
+    /** The counters, by Counter ordinal. */
+    private static final LongAdder[] COUNTS = new LongAdder[Counter.values().length];
+    /** Number of times each phase ran. */
+    private static final Map<String, LongAdder> PHASE_CALLS = new ConcurrentHashMap<>();
+    /** Nanoseconds spent in each phase, summed over all threads. */
+    private static final Map<String, LongAdder> PHASE_NANOS = new ConcurrentHashMap<>();
+    /** The timer handed out while tracing is off. */
+    private static final Timer OFF = new Timer(null);
+
+    static {
+        for (int i = 0; i < COUNTS.length; i += 1) {
+            COUNTS[i] = new LongAdder();
+        }
+    }
+
+    /** The format asked for with --trace, or null to use the setting. */
+    private static String flag;
+    /** When the current command started, in nanoseconds. */
+    private static long start = System.nanoTime();
+
+    /** Turns tracing on in FORMAT, "human" or "json", whatever the
+     *  setting says, or leaves it to the setting if FORMAT is null. */
+    static void trace(String format) {
+        flag = format;
+    }
+
+    /** Returns the report format, "human" or "json", or null if tracing is
+     *  off. */
+    static String format() {
+        String value = flag != null ? flag : Config.setting("stats");
+        if (value == null) {
+            return null;
+        }
+        return value.equalsIgnoreCase("json") ? "json" : "human";
+    }
+
+    /** True if the counters should be reported. */
+    static boolean enabled() {
+        return format() != null;
+    }
+
+    /** Sets every counter and timer back to zero, at the start of a command. */
+    static void reset() {
+        for (LongAdder count : COUNTS) {
+            count.reset();
+        }
+        PHASE_CALLS.clear();
+        PHASE_NANOS.clear();
+        start = System.nanoTime();
+    }
+
+    /** Adds N to COUNTER. */
+    static void add(Counter counter, long n) {
+        COUNTS[counter.ordinal()].add(n);
+    }
+
+    /** Adds one to COUNTER. */
+    static void count(Counter counter) {
+        COUNTS[counter.ordinal()].increment();
+    }
+
+    /** Returns the value of COUNTER. */
+    static long get(Counter counter) {
+        return COUNTS[counter.ordinal()].sum();
+    }
+
+    /** Returns a timer that adds the time until it is closed to PHASE. Use
+     *  it in a try-with-resources statement. Nothing is timed while tracing
+     *  is off. */
+    static Timer time(String phase) {
+        return enabled() ? new Timer(phase) : OFF;
+    }
+
+    /** Times one run of a phase. */
+    static class Timer implements AutoCloseable {
+        private final String phase;
+        private final long begin;
+
+        Timer(String phase) {
+            this.phase = phase;
+            this.begin = phase == null ? 0 : System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (phase != null) {
+                PHASE_CALLS.computeIfAbsent(phase, k -> new LongAdder()).increment();
+                PHASE_NANOS.computeIfAbsent(phase, k -> new LongAdder())
+                        .add(System.nanoTime() - begin);
+            }
+        }
+    }
+
+    /** Prints the counters and timers for COMMAND to standard error, if
+     *  tracing is on. */
+    static void report(String command) {
+        String format = format();
+        if (format == null) {
+            return;
+        }
+        double millis = (System.nanoTime() - start) / 1e6;
+        TreeMap<String, LongAdder> phases = new TreeMap<>(PHASE_NANOS);
+        StringBuilder out = new StringBuilder();
+        if (format.equals("json")) {
+            out.append("{\"command\":").append(Saving.quote(command))
+                    .append(String.format(Locale.ROOT, ",\"ms\":%.3f,\"counters\":{", millis));
+            for (Counter counter : Counter.values()) {
+                out.append(counter.ordinal() == 0 ? "" : ",").append(Saving.quote(counter.key()))
+                        .append(':').append(get(counter));
+            }
+            out.append("},\"phases\":{");
+            String separator = "";
+            for (Map.Entry<String, LongAdder> phase : phases.entrySet()) {
+                out.append(separator).append(Saving.quote(phase.getKey()))
+                        .append(String.format(Locale.ROOT, ":{\"calls\":%d,\"ms\":%.3f}",
+                                PHASE_CALLS.get(phase.getKey()).sum(),
+                                phase.getValue().sum() / 1e6));
+                separator = ",";
+            }
+            out.append("}}");
+        } else {
+            out.append(String.format("gitlet %s: %.1f ms%n", command, millis));
+            for (Counter counter : Counter.values()) {
+                out.append(String.format("  %-18s %d%n", counter.key(), get(counter)));
+            }
+            for (Map.Entry<String, LongAdder> phase : phases.entrySet()) {
+                out.append(String.format("  %-18s %d x, %.1f ms%n", phase.getKey(),
+                        PHASE_CALLS.get(phase.getKey()).sum(), phase.getValue().sum() / 1e6));
+            }
+            out.setLength(out.length() - System.lineSeparator().length());
+        }
+        System.err.println(out);
+    }
+}
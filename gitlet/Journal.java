@@ -0,0 +1,131 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import gitlet.Instrumentation.Counter;
+
+import static gitlet.Utils.join;
+
+/** Makes what a command writes survive a crash. Objects are renamed into
+ *  place once complete but are not forced to disk one by one; they are
+ *  recorded here instead. When the command ends, commit forces all of them,
+ *  the directories holding them and the new branches and staging index to
+ *  disk in one group, and only then renames the branches and staging index
+ *  into place. So a crash never leaves a branch or the staging index cut
+ *  short or referring to an object that was lost, only objects nothing
+ *  refers to, which gc removes. Setting "fsync" (GITLET_FSYNC) to 0 skips
+ *  the forcing, for file systems where it is not worth the cost.
+ *
+ *  @author Natalia Ramirez
+ */
+class Journal {
+    /** Files written since the last group was forced to disk. */
+    private static final Set<File> RECORDED = ConcurrentHashMap.newKeySet();
+
+    /** True if files are forced to disk. */
+    static boolean enabled() {
+        return Config.intSetting("fsync", 1, 0, 1) == 1;
+    }
+
+    /** Records FILE, just renamed into place, to be forced to disk with the
+     *  next group. */
+    static void record(File file) {
+        RECORDED.add(file);
+    }
+
+    /** Forgets the recorded files, for a command that failed. */
+    static void discard() {
+        RECORDED.clear();
+    }
+
+    /** Forces the recorded files and their directories to disk. */
+    static void sync() {
+        commit(new LinkedHashMap<>());
+    }
+
+    /** Replaces each file in REPLACEMENTS with its new contents through a
+     *  rename, once those contents and the recorded files are on disk. */
+    static void commit(Map<File, byte[]> replacements) {
+        Map<File, File> temps = new LinkedHashMap<>();
+        for (Map.Entry<File, byte[]> entry : replacements.entrySet()) {
+            File file = entry.getKey();
+            File temp = join(file.getParentFile(), "." + file.getName() + ".tmp");
+            Utils.writeContents(temp, entry.getValue());
+            temps.put(file, temp);
+        }
+        boolean enabled = enabled();
+        if (enabled) {
+            Set<File> group = new TreeSet<>(temps.values());
+            for (File file : RECORDED) {
+                group.add(file);
+                group.add(file.getParentFile());
+            }
+            force(group);
+        }
+        RECORDED.clear();
+        for (Map.Entry<File, File> entry : temps.entrySet()) {
+            try {
+                Files.move(entry.getValue().toPath(), entry.getKey().toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw Utils.error("Could not write %s: %s", entry.getKey().getName(),
+                        excp.getMessage());
+            }
+        }
+        if (enabled && !temps.isEmpty()) {
+            // the renames themselves
+            Set<File> dirs = new TreeSet<>();
+            for (File file : temps.keySet()) {
+                dirs.add(file.getParentFile());
+            }
+            force(dirs);
+        }
+    }
+
+    /** Forces FILES to disk, in parallel. */
+    private static void force(Set<File> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        List<String> paths = new ArrayList<>();
+        for (File file : files) {
+            paths.add(file.getPath());
+        }
+        try (Instrumentation.Timer timer = Instrumentation.time("fsync")) {
+            WorkTree.map(paths, path -> {
+                force(new File(path));
+                return null;
+            });
+        }
+    }
+
+    /** Forces FILE, a file or a directory, to disk. */
+    private static void force(File file) {
+        boolean dir = file.isDirectory();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                dir ? StandardOpenOption.READ : StandardOpenOption.WRITE)) {
+            channel.force(true);
+            Instrumentation.count(Counter.FSYNCS);
+        } catch (NoSuchFileException excp) {
+            // moved on since, as staged blobs are by commit
+        } catch (IOException excp) {
+            if (!dir) {
+                throw Utils.error("Could not write %s: %s", file.getName(), excp.getMessage());
+            }
+            // not every system can force a directory
+        }
+    }
+}
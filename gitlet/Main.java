@@ -1,5 +1,9 @@
 package gitlet;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
@@ -18,6 +22,10 @@ package gitlet;
  * = wug.txt wug.txt
  */
 public class Main {
+    /** Commands that never change the staging index or the branches, and so
+     *  run without locking the repository. */
+    private static final Set<String> READ_ONLY =
+            Set.of("log", "global-log", "find", "status", "diff");
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
@@ -28,7 +36,67 @@ public class Main {
         //Repository.commit("committing");
         //System.out.println(Saving.getStagingArea().getCurrentlyTrackedFiles());
         //Repository.rm("randomtext.txt");
+        if (args.length == 1 && args[0].equals("server")) {
+            // java gitlet.Main server
+            try {
+                Server.serve();
+            } catch (GitletException excp) {
+                System.out.println(excp.getMessage());
+            }
+            return;
+        }
+        execute(args);
+    }
+
+    /** Runs the command ARGS, printing the message of a GitletException it
+     *  fails with. The Server runs each request through here, so that its
+     *  output is exactly that of main. */
+    static void execute(String[] args) {
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** Runs the command ARGS. If it fails, nothing it changed is written. */
+    private static void run(String[] args) {
+        String trace = null;
+        Map<String, String> settings = new HashMap<>();
+        while (args.length > 0) {
+            if (args[0].startsWith("--trace")) {
+                trace = args[0].equals("--trace=json") ? "json" : "human";
+                args = Arrays.copyOfRange(args, 1, args.length);
+            } else if (args.length > 1 && args[0].equals("-c") && args[1].indexOf('=') > 0) {
+                // java gitlet.Main -c NAME=VALUE COMMAND ...
+                int eq = args[1].indexOf('=');
+                settings.put(args[1].substring(0, eq), args[1].substring(eq + 1));
+                args = Arrays.copyOfRange(args, 2, args.length);
+            } else {
+                break;
+            }
+        }
+        Config.override(settings);
+        Instrumentation.trace(trace);
+        if (args.length == 0) {
+            throw Utils.error("Please enter a command.");
+        }
         String firstArg = args[0];
+        RepositoryContext.open(!READ_ONLY.contains(firstArg));
+        try {
+            dispatch(firstArg, args);
+            RepositoryContext.close();
+        } catch (RuntimeException excp) {
+            RepositoryContext.discard();
+            throw excp;
+        } finally {
+            // failed commands are often the ones worth a look
+            Instrumentation.report(firstArg);
+        }
+    }
+
+    /** Runs the command FIRSTARG, whose arguments are ARGS. */
+    private static void dispatch(String firstArg, String[] args) {
         switch (firstArg) {
             case "":
                 System.out.println("Please enter a command.");
@@ -37,8 +105,7 @@ public class Main {
                 Repository.init();
                 break;
             case "add":
-                String secondArgAdd = args[1];
-                Repository.add(secondArgAdd);
+                Repository.add(Arrays.copyOfRange(args, 1, args.length));
                 break;
             case "commit":
                 String commitMessage = args[1];
@@ -49,14 +116,21 @@ public class Main {
                 Repository.rm(secondArgRm);
                 break;
             case "log":
-                Repository.log();
+                Repository.log(limit(args, 1));
                 break;
             case "global-log":
-                Repository.globallog();
+                // java gitlet.Main global-log [--json] [-n N]
+                boolean json = args.length > 1 && args[1].equals("--json");
+                Repository.globallog(limit(args, json ? 2 : 1), json);
                 break;
             case "find":
-                String message = args[1];
-                Repository.find(message);
+                // java gitlet.Main find [--word | --prefix] [message] [-n N]
+                if (args.length > 2 && (args[1].equals("--word")
+                        || args[1].equals("--prefix"))) {
+                    Repository.find(args[2], args[1], limit(args, 3));
+                } else {
+                    Repository.find(args[1], null, limit(args, 2));
+                }
                 break;
             case "status":
                 Repository.status();
@@ -69,6 +143,30 @@ public class Main {
                 String branchName2 = args[1];
                 Repository.rmbranch(branchName2);
                 break;
+            case "diff":
+                // java gitlet.Main diff [--staged | [commit id] [commit id]]
+                if (args.length == 2 && args[1].equals("--staged")) {
+                    Repository.diff(null, null, true);
+                } else if (args.length <= 3) {
+                    Repository.diff(args.length > 1 ? args[1] : null,
+                            args.length > 2 ? args[2] : null, false);
+                } else {
+                    throw Utils.error("Incorrect operands.");
+                }
+                break;
+            case "merge":
+                Repository.merge(args[1]);
+                break;
+            case "gc":
+                // java gitlet.Main gc [--now]
+                if (args.length > 2 || (args.length == 2 && !args[1].equals("--now"))) {
+                    throw Utils.error("Incorrect operands.");
+                }
+                Repository.gc(args.length == 2);
+                break;
+            case "pack":
+                Repository.pack();
+                break;
             case "checkout":
                 // java gitlet.Main checkout -- [file name]
                 if (args[1].equals("--")) {
@@ -91,10 +189,29 @@ public class Main {
 //                HashSet<String> stagedToAdd = Saving.getStagingArea().stagedToRemove;
 //                System.out.println(Saving.getStagingArea().stagedToAdd);
 //            case "printcurrentlytracked":
-//                TreeMap<String, String> blobMap = Saving.getStagingArea().headCommit.blobMap;
-//                System.out.println(Saving.getStagingArea().headCommit.blobMap);
+//                TreeMap<String, String> blobMap = Saving.getStagingArea().headCommit().blobMap;
+//                System.out.println(Saving.getStagingArea().headCommit().blobMap);
             default:
                 break;
         }
     }
+
+    /** Returns the N of an optional "-n N" at position FROM of ARGS, the most
+     *  entries to print, or no limit if it is absent. */
+    private static int limit(String[] args, int from) {
+        if (args.length == from) {
+            return Integer.MAX_VALUE;
+        }
+        if (args.length == from + 2 && args[from].equals("-n")) {
+            try {
+                int limit = Integer.parseInt(args[from + 1]);
+                if (limit >= 0) {
+                    return limit;
+                }
+            } catch (NumberFormatException excp) {
+                // reported below
+            }
+        }
+        throw Utils.error("Incorrect operands.");
+    }
 }
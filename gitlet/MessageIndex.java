@@ -0,0 +1,417 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.join;
+
+/** An inverted index over commit messages, for find. It maps every word of
+ *  every message, lowercased, to the commits whose message has it, and
+ *  every whole message to the commits that have exactly that message. It is
+ *  kept in two files. The main file is sorted and memory-mapped:
+ *
+ *      magic "GMSG" | version | commits indexed | term count (4 bytes each)
+ *      term count positions (4 bytes each) of the terms, in term order
+ *      per term: UTF-8 length (4 bytes) | UTF-8 bytes |
+ *                posting count (4 bytes) | raw 20-byte hashes, sorted
+ *
+ *  The log holds the commits made since the main file was written, each as
+ *  its raw hash and the UTF-8 length and bytes of its message. Every commit
+ *  appends to the log; once it holds LOG_LIMIT commits it is merged into a
+ *  new main file. An index that does not cover every commit of the commit
+ *  graph is rebuilt from the graph.
+ *
+ *  @author Natalia Ramirez
+ */
+class MessageIndex {
+    static final byte[] MAGIC = {'G', 'M', 'S', 'G'};
+    static final int VERSION = 1;
+    /** Number of commits the log holds before it is merged into the main file. */
+    static final int LOG_LIMIT = 1024;
+    /** Start of the term of a whole message, which no word can start with. */
+    private static final char EXACT = '\0';
+    /** Size of the header of the main file. */
+    private static final int HEADER_SIZE = 16;
+
+    /** The main file. */
+    private final MappedByteBuffer main;
+    /** Number of commits in the main file. */
+    private final int mainCommits;
+    /** Number of terms in the main file. */
+    private final int termCount;
+    /** The messages of the commits in the log, by hash. */
+    private final TreeMap<String, String> logged;
+
+    /** Reads the index. */
+    private MessageIndex() {
+        main = map(Repository.MESSAGE_INDEX);
+        for (int i = 0; i < MAGIC.length; i += 1) {
+            if (main.limit() < HEADER_SIZE || main.get(i) != MAGIC[i]) {
+                throw Utils.error("%s is not a message index.",
+                        Repository.MESSAGE_INDEX.getName());
+            }
+        }
+        if (main.getInt(4) != VERSION) {
+            throw Utils.error("%s has an unsupported version.",
+                    Repository.MESSAGE_INDEX.getName());
+        }
+        mainCommits = main.getInt(8);
+        termCount = main.getInt(12);
+        logged = readLog();
+    }
+
+    /** Returns the index, rebuilt first if it is missing or does not cover
+     *  every commit. */
+    private static MessageIndex open() {
+        if (Repository.MESSAGE_INDEX.exists()) {
+            MessageIndex index = new MessageIndex();
+            if (index.mainCommits + index.logged.size() == CommitGraph.get().size()) {
+                return index;
+            }
+        }
+        rebuild();
+        return new MessageIndex();
+    }
+
+    /* QUERIES */
+
+    /** Returns up to LIMIT hashes, sorted, of the commits whose message is
+     *  MESSAGE. */
+    static List<String> exact(String message, int limit) {
+        return first(open().postings(EXACT + message), limit);
+    }
+
+    /** Returns up to LIMIT hashes, sorted, of the commits whose message has
+     *  every word of QUERY, ignoring case. */
+    static List<String> words(String query, int limit) {
+        MessageIndex index = open();
+        TreeSet<String> matches = null;
+        for (String word : words(query)) {
+            matches = intersect(matches, index.postings(word));
+        }
+        return first(matches, limit);
+    }
+
+    /** Returns up to LIMIT hashes, sorted, of the commits whose message has
+     *  every word of QUERY, ignoring case, the last word possibly only as
+     *  the start of a longer one. */
+    static List<String> prefix(String query, int limit) {
+        MessageIndex index = open();
+        List<String> words = words(query);
+        TreeSet<String> matches = null;
+        for (int i = 0; i < words.size(); i += 1) {
+            matches = intersect(matches, i < words.size() - 1 ? index.postings(words.get(i))
+                    : index.postingsWithPrefix(words.get(i)));
+        }
+        return first(matches, limit);
+    }
+
+    /** Returns the commits indexed under TERM. */
+    private TreeSet<String> postings(String term) {
+        TreeSet<String> hashes = new TreeSet<>();
+        int i = search(term);
+        if (i < termCount && term(i).equals(term)) {
+            addPostings(i, hashes);
+        }
+        for (Map.Entry<String, String> entry : logged.entrySet()) {
+            if (terms(entry.getValue()).contains(term)) {
+                hashes.add(entry.getKey());
+            }
+        }
+        return hashes;
+    }
+
+    /** Returns the commits indexed under a word starting with PREFIX. */
+    private TreeSet<String> postingsWithPrefix(String prefix) {
+        TreeSet<String> hashes = new TreeSet<>();
+        for (int i = search(prefix); i < termCount && term(i).startsWith(prefix); i += 1) {
+            addPostings(i, hashes);
+        }
+        for (Map.Entry<String, String> entry : logged.entrySet()) {
+            for (String word : words(entry.getValue())) {
+                if (word.startsWith(prefix)) {
+                    hashes.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return hashes;
+    }
+
+    /** Returns the position of the first term of the main file that does not
+     *  sort before TERM. */
+    private int search(String term) {
+        int lo = 0;
+        int hi = termCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (term(mid).compareTo(term) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns term I of the main file. */
+    private String term(int i) {
+        int start = main.getInt(HEADER_SIZE + 4 * i);
+        byte[] bytes = new byte[main.getInt(start)];
+        for (int k = 0; k < bytes.length; k += 1) {
+            bytes[k] = main.get(start + 4 + k);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Adds the commits of term I of the main file to HASHES. */
+    private void addPostings(int i, TreeSet<String> hashes) {
+        int start = main.getInt(HEADER_SIZE + 4 * i);
+        start += 4 + main.getInt(start);
+        int count = main.getInt(start);
+        byte[] raw = new byte[PackIndex.HASH_BYTES];
+        for (int p = 0; p < count; p += 1) {
+            for (int k = 0; k < raw.length; k += 1) {
+                raw[k] = main.get(start + 4 + p * raw.length + k);
+            }
+            hashes.add(ObjectStore.toHex(raw));
+        }
+    }
+
+    /** Returns the hashes in both MATCHES and HASHES, or HASHES if MATCHES
+     *  is null. */
+    private static TreeSet<String> intersect(TreeSet<String> matches, TreeSet<String> hashes) {
+        if (matches == null) {
+            return hashes;
+        }
+        matches.retainAll(hashes);
+        return matches;
+    }
+
+    /** Returns the first LIMIT of HASHES, which may be null. */
+    private static List<String> first(TreeSet<String> hashes, int limit) {
+        List<String> result = new ArrayList<>();
+        if (hashes != null) {
+            for (String hash : hashes) {
+                if (result.size() == limit) {
+                    break;
+                }
+                result.add(hash);
+            }
+        }
+        return result;
+    }
+
+    /* TERMS */
+
+    /** Returns the lowercased words of TEXT, in order. */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /** Returns every term MESSAGE is indexed under. */
+    private static TreeSet<String> terms(String message) {
+        TreeSet<String> terms = new TreeSet<>(words(message));
+        terms.add(EXACT + message);
+        return terms;
+    }
+
+    /* UPDATES */
+
+    /** Adds the commit COMMITHASH, whose message is MESSAGE, to the index. */
+    static void append(String commitHash, String message) {
+        if (!Repository.MESSAGE_INDEX.exists()) {
+            // built from the commit graph, which already has the commit
+            rebuild();
+            return;
+        }
+        TreeMap<String, String> log = readLog();
+        log.put(commitHash, message);
+        if (log.size() >= LOG_LIMIT) {
+            MessageIndex index = new MessageIndex();
+            TreeMap<String, TreeSet<String>> postings = index.allPostings();
+            for (Map.Entry<String, String> entry : log.entrySet()) {
+                addTerms(postings, entry.getKey(), entry.getValue());
+            }
+            writeMain(postings, index.mainCommits + log.size());
+            Repository.MESSAGE_LOG.delete();
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(rawHash(commitHash));
+            out.writeInt(text.length);
+            out.write(text);
+        } catch (IOException excp) {
+            throw Utils.error("Could not write the message index: %s", excp.getMessage());
+        }
+        try (FileChannel channel = FileChannel.open(Repository.MESSAGE_LOG.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            // overwrite whatever a failed append left after the last entry
+            long position = validLogLength(channel);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.truncate(position);
+        } catch (IOException excp) {
+            throw Utils.error("Could not write the message index: %s", excp.getMessage());
+        }
+    }
+
+    /** Writes the index of every commit in the commit graph from scratch. */
+    static void rebuild() {
+        CommitGraph graph = CommitGraph.get();
+        TreeMap<String, TreeSet<String>> postings = new TreeMap<>();
+        for (int i = 0; i < graph.size(); i += 1) {
+            addTerms(postings, graph.hash(i), graph.message(i));
+        }
+        writeMain(postings, graph.size());
+        Repository.MESSAGE_LOG.delete();
+    }
+
+    /** Returns every term of the main file with its commits. */
+    private TreeMap<String, TreeSet<String>> allPostings() {
+        TreeMap<String, TreeSet<String>> postings = new TreeMap<>();
+        for (int i = 0; i < termCount; i += 1) {
+            TreeSet<String> hashes = new TreeSet<>();
+            addPostings(i, hashes);
+            postings.put(term(i), hashes);
+        }
+        return postings;
+    }
+
+    /** Adds COMMITHASH to POSTINGS under every term of MESSAGE. */
+    private static void addTerms(TreeMap<String, TreeSet<String>> postings,
+                                 String commitHash, String message) {
+        for (String term : terms(message)) {
+            postings.computeIfAbsent(term, k -> new TreeSet<>()).add(commitHash);
+        }
+    }
+
+    /** Replaces the main file with one holding POSTINGS, covering COMMITS
+     *  commits. */
+    private static void writeMain(TreeMap<String, TreeSet<String>> postings, int commits) {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        int[] positions = new int[postings.size()];
+        int start = HEADER_SIZE + 4 * postings.size();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream entryOut = new DataOutputStream(entries);
+             DataOutputStream out = new DataOutputStream(bytes)) {
+            int i = 0;
+            for (Map.Entry<String, TreeSet<String>> entry : postings.entrySet()) {
+                positions[i] = start + entryOut.size();
+                byte[] term = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                entryOut.writeInt(term.length);
+                entryOut.write(term);
+                entryOut.writeInt(entry.getValue().size());
+                for (String hash : entry.getValue()) {
+                    entryOut.write(rawHash(hash));
+                }
+                i += 1;
+            }
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(commits);
+            out.writeInt(postings.size());
+            for (int position : positions) {
+                out.writeInt(position);
+            }
+            entryOut.flush();
+            entries.writeTo(out);
+        } catch (IOException excp) {
+            throw Utils.error("Could not write the message index: %s", excp.getMessage());
+        }
+        // named after the process: readers rebuild the index without the lock
+        File temp = join(Repository.GITLET_DIR, "." + Repository.MESSAGE_INDEX.getName() + "."
+                + ProcessHandle.current().pid() + ".tmp");
+        Utils.writeContents(temp, bytes.toByteArray());
+        try {
+            Files.move(temp.toPath(), Repository.MESSAGE_INDEX.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Could not write the message index: %s", excp.getMessage());
+        }
+    }
+
+    /** Returns the messages of the commits in the log, by hash. An entry cut
+     *  short by a failed append is ignored. */
+    private static TreeMap<String, String> readLog() {
+        TreeMap<String, String> log = new TreeMap<>();
+        if (!Repository.MESSAGE_LOG.exists()) {
+            return log;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Utils.readContents(Repository.MESSAGE_LOG));
+        byte[] raw = new byte[PackIndex.HASH_BYTES];
+        while (bytes.remaining() >= raw.length + 4) {
+            bytes.get(raw);
+            int length = bytes.getInt();
+            if (length < 0 || length > bytes.remaining()) {
+                break;
+            }
+            byte[] text = new byte[length];
+            bytes.get(text);
+            log.put(ObjectStore.toHex(raw), new String(text, StandardCharsets.UTF_8));
+        }
+        return log;
+    }
+
+    /** Returns the length of the complete entries of the log open on
+     *  CHANNEL. */
+    private static long validLogLength(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer length = ByteBuffer.allocate(4);
+        while (size - position >= PackIndex.HASH_BYTES + 4) {
+            length.clear();
+            channel.read(length, position + PackIndex.HASH_BYTES);
+            length.flip();
+            long end = position + PackIndex.HASH_BYTES + 4 + length.getInt();
+            if (end > size || end < position) {
+                break;
+            }
+            position = end;
+        }
+        return position;
+    }
+
+    /** Returns the raw bytes of the hexadecimal HASH. */
+    private static byte[] rawHash(String hash) {
+        byte[] raw = new byte[PackIndex.HASH_BYTES];
+        for (int k = 0; k < raw.length; k += 1) {
+            raw[k] = (byte) Integer.parseInt(hash.substring(2 * k, 2 * k + 2), 16);
+        }
+        return raw;
+    }
+
+    /** Maps all of FILE for reading. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw Utils.error("Could not read %s: %s", file.getName(), excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import gitlet.Instrumentation.Counter;
+
+/** The on-disk format of stored objects: a small header followed by the
+ *  deflate-compressed payload.
+ *
+ *      magic "GL" (2 bytes) | version (1) | type (1) | payload length (8)
+ *
+ *  Objects written before this format existed have no header; they are
+ *  read back as raw payloads.
+ *
+ *  @author Natalia Ramirez
+ */
+class ObjectFormat {
+    /** Type of an object holding the contents of a file. */
+    static final byte TYPE_BLOB = 1;
+    /** Type of an object holding a serialized Commit. */
+    static final byte TYPE_COMMIT = 2;
+    /** Type of an object holding an encoded Tree. */
+    static final byte TYPE_TREE = 3;
+
+    /** Size of the header in bytes. */
+    static final int HEADER_SIZE = 12;
+    /** Current format version. */
+    private static final byte VERSION = 1;
+    private static final byte MAGIC0 = 'G';
+    private static final byte MAGIC1 = 'L';
+    /** Size of the buffers used to inflate and deflate. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** Empty input for an encoder between writes. */
+    private static final byte[] NO_INPUT = new byte[0];
+
+    /* WRITING */
+
+    /** Writes PAYLOAD to FILE as an object of type TYPE, replacing FILE. */
+    static void write(File file, byte type, byte[] payload) {
+        try (Encoder encoder = new Encoder(Files.newOutputStream(file.toPath()),
+                type, payload.length)) {
+            encoder.write(ByteBuffer.wrap(payload));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns PAYLOAD encoded as an object of type TYPE. */
+    static byte[] encode(byte type, byte[] payload) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Encoder encoder = new Encoder(bytes, type, payload.length)) {
+            encoder.write(ByteBuffer.wrap(payload));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Writes one object to a stream whose payload length is known up front.
+     *  The payload may be handed over in any number of pieces. */
+    static class Encoder implements Closeable {
+        private final OutputStream out;
+        private final Deflater deflater = new Deflater(Config.compressionLevel());
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        /** An encoder writing an object of type TYPE with a payload of LENGTH
+         *  bytes to OUT. */
+        Encoder(OutputStream out, byte type, long length) throws IOException {
+            Instrumentation.count(Counter.OBJECTS_WRITTEN);
+            this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+            DataOutputStream header = new DataOutputStream(this.out);
+            header.writeByte(MAGIC0);
+            header.writeByte(MAGIC1);
+            header.writeByte(VERSION);
+            header.writeByte(type);
+            header.writeLong(length);
+        }
+
+        /** Compresses the remaining bytes of DATA. */
+        void write(ByteBuffer data) throws IOException {
+            deflater.setInput(data);
+            while (!deflater.needsInput()) {
+                drain();
+            }
+            // the deflater keeps DATA and would see it again once the
+            // caller reuses it
+            deflater.setInput(NO_INPUT);
+        }
+
+        /** Writes out whatever the deflater has produced so far. */
+        private void drain() throws IOException {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    drain();
+                }
+                out.close();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    /* READING */
+
+    /** Returns a stream over the payload of the object in FILE. */
+    static InputStream open(File file) {
+        try {
+            Instrumentation.count(Counter.FILES_READ);
+            Instrumentation.count(Counter.OBJECTS_READ);
+            InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()),
+                    BUFFER_SIZE);
+            in.mark(HEADER_SIZE);
+            if (readHeader(in) < 0) {
+                // written before objects had a header
+                in.reset();
+                return in;
+            }
+            return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the whole payload of the object in FILE. */
+    static byte[] read(File file) {
+        try (InputStream in = open(file)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return an object of type T read from the object in FILE, casting it to
+     *  EXPECTEDCLASS. */
+    static <T extends Serializable> T readObject(File file, Class<T> expectedClass) {
+        Instrumentation.count(Counter.DESERIALIZATIONS);
+        try (ObjectInputStream in = new ObjectInputStream(open(file))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return an object of type T deserialized from PAYLOAD, casting it to
+     *  EXPECTEDCLASS. */
+    static <T extends Serializable> T deserialize(byte[] payload, Class<T> expectedClass) {
+        Instrumentation.count(Counter.DESERIALIZATIONS);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the payload length of the object in FILE without reading the
+     *  payload. */
+    static long length(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            long length = readHeader(in);
+            return length < 0 ? file.length() : length;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reads a header from IN and returns the payload length it records, or
+     *  -1 if IN does not start with a header. */
+    private static long readHeader(InputStream in) throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        try {
+            if (header.readByte() != MAGIC0 || header.readByte() != MAGIC1
+                    || header.readByte() != VERSION) {
+                return -1;
+            }
+            byte type = header.readByte();
+            if (type != TYPE_BLOB && type != TYPE_COMMIT && type != TYPE_TREE) {
+                return -1;
+            }
+            return header.readLong();
+        } catch (EOFException excp) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+import gitlet.Instrumentation.Counter;
+
+import static gitlet.Utils.join;
+
+/** Content-addressed store for the blobs under BLOB_DIR, the trees under
+ *  TREE_DIR and the commits under COMMIT_DIR. Every blob is named by the
+ *  SHA-1 hash of its contents, so a given version of a file is written
+ *  exactly once no matter how many commits track it. Loose objects are
+ *  kept in the format of ObjectFormat; the pack command moves them into
+ *  packfiles, which every lookup here also searches.
+ *
+ *  @author Natalia Ramirez
+ */
+public class ObjectStore {
+    /** Size of the buffer used to stream small files. */
+    static final int CHUNK_SIZE = 64 * 1024;
+    /** Files at least this large are read through memory-mapped windows
+     *  instead of the chunk buffer. */
+    static final long MAP_THRESHOLD = 8L * 1024 * 1024;
+    /** Size of one memory-mapped window. */
+    static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    /** Returns the file holding the blob with hash BLOBHASH. */
+    static File blobFile(String blobHash) {
+        return join(Repository.BLOB_DIR, blobHash);
+    }
+
+    /** Returns the scratch file a blob with hash BLOBHASH is staged in. */
+    static File stagedBlobFile(String blobHash) {
+        return join(Repository.BLOBS_ADDED, blobHash);
+    }
+
+    /** Returns the size in bytes of the contents of the stored blob with hash
+     *  BLOBHASH, or -1 if it is not in the store. */
+    static long blobSize(String blobHash) {
+        File blob = blobFile(blobHash);
+        if (blob.isFile()) {
+            return ObjectFormat.length(blob);
+        }
+        PackFile pack = PackFile.find(blobHash);
+        return pack == null ? -1 : pack.size(blobHash);
+    }
+
+    /** Returns the contents of the stored blob with hash BLOBHASH. */
+    static byte[] readBlob(String blobHash) {
+        File blob = blobFile(blobHash);
+        if (blob.isFile()) {
+            return ObjectFormat.read(blob);
+        }
+        return packOf(blobHash).read(blobHash);
+    }
+
+    /** Writes the contents of the stored blob with hash BLOBHASH to TARGET,
+     *  replacing TARGET. */
+    static void copyBlobTo(String blobHash, File target) {
+        target.getParentFile().mkdirs();
+        File blob = blobFile(blobHash);
+        if (!blob.isFile()) {
+            byte[] contents = packOf(blobHash).read(blobHash);
+            Instrumentation.add(Counter.BYTES_COPIED, contents.length);
+            Utils.writeContents(target, contents);
+            return;
+        }
+        try (InputStream in = ObjectFormat.open(blob)) {
+            Instrumentation.add(Counter.BYTES_COPIED,
+                    Files.copy(in, target.toPath(), StandardCopyOption.REPLACE_EXISTING));
+        } catch (IOException ex) {
+            throw Utils.error("Could not write %s: %s", target.getName(), ex.getMessage());
+        }
+    }
+
+    /** Returns a stream over the contents of the blob with hash BLOBHASH,
+     *  staged or stored. */
+    static InputStream openBlob(String blobHash) {
+        File staged = stagedBlobFile(blobHash);
+        if (staged.isFile()) {
+            return ObjectFormat.open(staged);
+        }
+        File blob = blobFile(blobHash);
+        if (blob.isFile()) {
+            return ObjectFormat.open(blob);
+        }
+        byte[] contents = packOf(blobHash).read(blobHash);
+        return new ByteArrayInputStream(contents);
+    }
+
+    /** Writes the contents of the stored blob with hash BLOBHASH to OUT. */
+    static void copyBlobTo(String blobHash, OutputStream out) throws IOException {
+        File blob = blobFile(blobHash);
+        if (!blob.isFile()) {
+            byte[] contents = packOf(blobHash).read(blobHash);
+            Instrumentation.add(Counter.BYTES_COPIED, contents.length);
+            out.write(contents);
+            return;
+        }
+        try (InputStream in = ObjectFormat.open(blob)) {
+            Instrumentation.add(Counter.BYTES_COPIED, in.transferTo(out));
+        }
+    }
+
+    /** Returns the file holding the commit with hash COMMITHASH. */
+    static File commitFile(String commitHash) {
+        return join(Repository.COMMIT_DIR, commitHash + ".txt");
+    }
+
+    /** True if the commit with hash COMMITHASH is in the store. */
+    static boolean containsCommit(String commitHash) {
+        // the mapped pack indexes answer without touching the file system
+        PackFile pack = PackFile.find(commitHash);
+        if (pack != null) {
+            return pack.type(commitHash) == ObjectFormat.TYPE_COMMIT;
+        }
+        return commitFile(commitHash).isFile();
+    }
+
+    /** Returns the stored commit with hash COMMITHASH. */
+    static Commit readCommit(String commitHash) {
+        PackFile pack = PackFile.find(commitHash);
+        if (pack != null) {
+            return Codec.decodeCommit(pack.read(commitHash));
+        }
+        File commit = commitFile(commitHash);
+        if (!commit.isFile()) {
+            // packed since the lookup above
+            return Codec.decodeCommit(packOf(commitHash).read(commitHash));
+        }
+        return Codec.decodeCommit(ObjectFormat.read(commit));
+    }
+
+    /** Returns the hashes of all stored commits, in order. */
+    static List<String> allCommitHashes() {
+        TreeSet<String> hashes = new TreeSet<>(PackFile.allHashes(ObjectFormat.TYPE_COMMIT));
+        for (String fileName : Utils.plainFilenamesIn(Repository.COMMIT_DIR)) {
+            if (!fileName.endsWith(".txt")) {
+                // being written
+                continue;
+            }
+            hashes.add(fileName.substring(0, fileName.length() - ".txt".length()));
+        }
+        return new ArrayList<>(hashes);
+    }
+
+    /** Shortest commit id prefix that is looked up. */
+    static final int MIN_PREFIX = 4;
+
+    /** Returns up to LIMIT hashes of stored commits that start with PREFIX.
+     *  Prefixes shorter than MIN_PREFIX or containing anything but hex digits
+     *  match nothing. Commits are found in the table of the CommitGraph,
+     *  which holds every stored commit, loose or packed, sorted by hash. */
+    static List<String> commitsWithPrefix(String prefix, int limit) {
+        List<String> matches = new ArrayList<>();
+        prefix = prefix.toLowerCase();
+        if (prefix.length() < MIN_PREFIX || prefix.length() > 2 * PackIndex.HASH_BYTES
+                || !prefix.matches("[0-9a-f]+")) {
+            return matches;
+        }
+        if (prefix.length() == 2 * PackIndex.HASH_BYTES) {
+            if (containsCommit(prefix)) {
+                matches.add(prefix);
+            }
+            return matches;
+        }
+        CommitGraph.get().findPrefix(prefix, matches, limit);
+        return matches;
+    }
+
+    /** Returns the pack holding object HASH, which must be stored and is not
+     *  loose. If the loaded packs do not hold it, the pack directory is
+     *  looked at once more: a command that only reads holds no lock, and
+     *  pack may have moved the object out of the loose store since the packs
+     *  were loaded. */
+    private static PackFile packOf(String hash) {
+        PackFile pack = PackFile.find(hash);
+        if (pack == null && PackFile.refresh()) {
+            pack = PackFile.find(hash);
+        }
+        if (pack == null) {
+            throw Utils.error("Object %s is missing.", hash);
+        }
+        return pack;
+    }
+
+    /** Stores COMMIT, whose serialized form is SERIALIZED, under COMMITHASH. */
+    static void writeCommit(String commitHash, byte[] serialized) {
+        File temp = join(Repository.COMMIT_DIR,
+                "tmp-" + System.nanoTime() + "-" + Thread.currentThread().getId());
+        ObjectFormat.write(temp, ObjectFormat.TYPE_COMMIT, serialized);
+        moveIntoStore(temp, commitFile(commitHash));
+    }
+
+    /** Returns the file holding the tree with hash TREEHASH. */
+    static File treeFile(String treeHash) {
+        return join(Repository.TREE_DIR, treeHash);
+    }
+
+    /** Returns the encoding of the stored tree with hash TREEHASH. */
+    static byte[] readTree(String treeHash) {
+        File tree = treeFile(treeHash);
+        if (tree.isFile()) {
+            return ObjectFormat.read(tree);
+        }
+        return packOf(treeHash).read(treeHash);
+    }
+
+    /** Stores the tree with hash TREEHASH and encoding PAYLOAD, unless the
+     *  store already holds it. */
+    static void writeTree(String treeHash, byte[] payload) {
+        File tree = treeFile(treeHash);
+        if (tree.isFile() || PackFile.find(treeHash) != null) {
+            return;
+        }
+        Repository.TREE_DIR.mkdir();
+        File temp = join(Repository.TREE_DIR,
+                "tmp-" + System.nanoTime() + "-" + Thread.currentThread().getId());
+        ObjectFormat.write(temp, ObjectFormat.TYPE_TREE, payload);
+        moveIntoStore(temp, tree);
+    }
+
+    /** True if the blob with hash BLOBHASH is already in the store. */
+    static boolean containsBlob(String blobHash) {
+        return PackFile.find(blobHash) != null || blobFile(blobHash).isFile();
+    }
+
+    /** Moves every blob in BLOBHASHES from the staging scratch directory into
+     *  the store, skipping the ones the store already holds. */
+    static void storeStaged(Collection<String> blobHashes) {
+        for (String blobHash : blobHashes) {
+            File staged = stagedBlobFile(blobHash);
+            if (containsBlob(blobHash)) {
+                // same contents were stored by an earlier commit
+                staged.delete();
+                continue;
+            }
+            if (!staged.isFile()) {
+                throw Utils.error("Staged blob %s is missing.", blobHash);
+            }
+            moveIntoStore(staged, blobFile(blobHash));
+        }
+    }
+
+    /** Renames SOURCE to TARGET in one step, so TARGET is never seen
+     *  half-written, and records TARGET to be forced to disk before anything
+     *  refers to it. Falls back to a plain move where the file system does
+     *  not support atomic renames. */
+    private static void moveIntoStore(File source, File target) {
+        try {
+            try {
+                Files.move(source.toPath(), target.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(source.toPath(), target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            throw Utils.error("Could not store object: %s", ex.getMessage());
+        }
+        Journal.record(target);
+    }
+
+    /* STREAMING HASHING AND COPYING */
+
+    /** Returns the SHA-1 hash of the contents of FILE. The file is read in
+     *  fixed-size pieces, so the heap used does not depend on its size. */
+    static String hashFile(File file) {
+        MessageDigest md = newDigest();
+        Instrumentation.count(Counter.FILES_READ);
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Instrumentation.add(Counter.BYTES_HASHED, in.size());
+            stream(in, md, null);
+        } catch (IOException ex) {
+            throw Utils.error("Could not read %s: %s", file.getName(), ex.getMessage());
+        }
+        return toHex(md.digest());
+    }
+
+    /** Copies FILE into the staging scratch directory as a compressed blob,
+     *  hashing its contents in the same pass, and returns the hash. The copy
+     *  is named by that hash once it is complete. */
+    static String stageFile(File file) {
+        MessageDigest md = newDigest();
+        File temp = join(Repository.BLOBS_ADDED,
+                "tmp-" + System.nanoTime() + "-" + Thread.currentThread().getId());
+        Instrumentation.count(Counter.FILES_READ);
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             ObjectFormat.Encoder out = new ObjectFormat.Encoder(
+                     Files.newOutputStream(temp.toPath()), ObjectFormat.TYPE_BLOB, in.size())) {
+            Instrumentation.add(Counter.BYTES_HASHED, in.size());
+            Instrumentation.add(Counter.BYTES_COPIED, in.size());
+            stream(in, md, out);
+        } catch (IOException ex) {
+            temp.delete();
+            throw Utils.error("Could not stage %s: %s", file.getName(), ex.getMessage());
+        }
+        String blobHash = toHex(md.digest());
+        if (containsBlob(blobHash)) {
+            temp.delete();
+        } else {
+            moveIntoStore(temp, stagedBlobFile(blobHash));
+        }
+        return blobHash;
+    }
+
+    /** Feeds every byte of IN to MD, and also to OUT unless OUT is null.
+     *  Large inputs are mapped window by window rather than copied through
+     *  the heap. */
+    private static void stream(FileChannel in, MessageDigest md,
+                               ObjectFormat.Encoder out) throws IOException {
+        long size = in.size();
+        if (size >= MAP_THRESHOLD) {
+            for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                MappedByteBuffer window =
+                        in.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_WINDOW, size - pos));
+                md.update(window.duplicate());
+                if (out != null) {
+                    out.write(window);
+                }
+            }
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        while (in.read(buffer) != -1) {
+            buffer.flip();
+            md.update(buffer.array(), 0, buffer.limit());
+            if (out != null) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /** Returns a fresh SHA-1 digest. */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns DIGEST as a lowercase hexadecimal numeral. */
+    static String toHex(byte[] digest) {
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i += 1) {
+            hex[2 * i] = Character.forDigit((digest[i] >> 4) & 0xf, 16);
+            hex[2 * i + 1] = Character.forDigit(digest[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+}
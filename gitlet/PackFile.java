@@ -0,0 +1,212 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import gitlet.Instrumentation.Counter;
+
+import static gitlet.Utils.join;
+
+/** A packfile: many objects in one file, with an index giving the offset of
+ *  each. The pack starts with the magic "GPAK", a version and the number of
+ *  objects; each object is then
+ *
+ *      kind (1 byte) | size | [distance to base] | compressed length | data
+ *
+ *  where numbers are variable-length, size is the length of the object's
+ *  payload and data is deflated. A DELTA object's data is a Delta against the
+ *  object DISTANCE bytes before it in the same pack.
+ *
+ *  The objects of pack-NAME.pack are found through its PackIndex,
+ *  pack-NAME.idx.
+ *
+ *  @author Natalia Ramirez
+ */
+class PackFile {
+    /** Kind of an entry holding a whole blob. */
+    static final int ENTRY_BLOB = 1;
+    /** Kind of an entry holding a whole commit. */
+    static final int ENTRY_COMMIT = 2;
+    /** Kind of an entry holding a blob as a delta against an earlier entry. */
+    static final int ENTRY_DELTA = 3;
+    /** Kind of an entry holding a whole tree. */
+    static final int ENTRY_TREE = 4;
+    /** Longest chain of deltas a reader may have to follow. */
+    static final int MAX_DEPTH = 10;
+
+    static final byte[] PACK_MAGIC = {'G', 'P', 'A', 'K'};
+    static final int VERSION = 1;
+
+    /** The packs of the repository, loaded on first use. */
+    private static List<PackFile> packs;
+    /** The stamp of the pack directory when the packs were loaded. */
+    private static String packsStamp;
+
+    /** The pack file itself. */
+    private final File pack;
+    /** The index of the pack. */
+    private final PackIndex index;
+
+    /** Opens the pack whose index is INDEX. */
+    PackFile(File index) {
+        String name = index.getName();
+        pack = join(index.getParentFile(), name.substring(0, name.length() - 4) + ".pack");
+        this.index = new PackIndex(index);
+    }
+
+    /** Returns every pack of the repository. */
+    static synchronized List<PackFile> all() {
+        if (packs == null) {
+            packsStamp = Utils.stamp(Repository.PACK_DIR);
+            packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(Repository.PACK_DIR);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        packs.add(new PackFile(join(Repository.PACK_DIR, name)));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Forgets the loaded packs, so that the next lookup sees new ones. */
+    static synchronized void reload() {
+        packs = null;
+    }
+
+    /** Forgets the loaded packs if packs have been added or removed since
+     *  they were loaded. Returns true if it forgot them. */
+    static synchronized boolean refresh() {
+        if (packs != null && !String.valueOf(packsStamp).equals(
+                Utils.stamp(Repository.PACK_DIR))) {
+            packs = null;
+            return true;
+        }
+        return false;
+    }
+
+    /** Returns the loaded pack holding the object with hash HASH, or null. */
+    static PackFile find(String hash) {
+        for (PackFile pack : all()) {
+            if (pack.contains(hash)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** True if this pack holds the object with hash HASH. */
+    boolean contains(String hash) {
+        return index.find(hash) >= 0;
+    }
+
+    /** Returns the ObjectFormat type of the object with hash HASH. */
+    byte type(String hash) {
+        return index.type(index.find(hash));
+    }
+
+    /** Returns the offset in the pack of the object with hash HASH. */
+    private long offset(String hash) {
+        return index.offset(index.find(hash));
+    }
+
+    /** Returns the payload length of the object with hash HASH. */
+    long size(String hash) {
+        try (RandomAccessFile in = new RandomAccessFile(pack, "r")) {
+            in.seek(offset(hash));
+            in.readByte();
+            return readVarLong(in);
+        } catch (IOException excp) {
+            throw Utils.error("Could not read %s: %s", pack.getName(), excp.getMessage());
+        }
+    }
+
+    /** Returns the payload of the object with hash HASH. */
+    byte[] read(String hash) {
+        Instrumentation.count(Counter.FILES_READ);
+        Instrumentation.count(Counter.OBJECTS_READ);
+        try (RandomAccessFile in = new RandomAccessFile(pack, "r")) {
+            return readEntry(in, offset(hash), 0);
+        } catch (IOException excp) {
+            throw Utils.error("Could not read %s: %s", pack.getName(), excp.getMessage());
+        }
+    }
+
+    /** Returns the payload of the entry at OFFSET of IN, which is DEPTH
+     *  deltas away from the object asked for. */
+    private byte[] readEntry(RandomAccessFile in, long offset, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw Utils.error("Delta chain in %s is too long.", pack.getName());
+        }
+        in.seek(offset);
+        int kind = in.readByte();
+        long size = readVarLong(in);
+        long baseOffset = kind == ENTRY_DELTA ? offset - readVarLong(in) : -1;
+        byte[] compressed = new byte[(int) readVarLong(in)];
+        in.readFully(compressed);
+        if (kind != ENTRY_DELTA) {
+            return inflate(compressed, size);
+        }
+        byte[] delta = inflate(compressed, -1);
+        return Delta.apply(readEntry(in, baseOffset, depth + 1), delta);
+    }
+
+    /** Returns the inflated form of COMPRESSED, which is SIZE bytes long, or
+     *  of unknown length if SIZE is negative. */
+    private static byte[] inflate(byte[] compressed, long size) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                size < 0 ? compressed.length * 2 : (int) size);
+        byte[] buffer = new byte[64 * 1024];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && inflater.needsInput()) {
+                    throw Utils.error("Pack entry is truncated.");
+                }
+                out.write(buffer, 0, n);
+            }
+        } catch (DataFormatException excp) {
+            throw Utils.error("Pack entry is corrupt: %s", excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /** Reads a variable-length number written by Delta.writeVarLong. */
+    private static long readVarLong(RandomAccessFile in) throws IOException {
+        long value = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+    }
+
+    /** Returns the sorted hashes of every packed object of type TYPE. */
+    static List<String> allHashes(byte type) {
+        List<String> hashes = new ArrayList<>();
+        for (PackFile pack : all()) {
+            for (int i = 0; i < pack.index.size(); i += 1) {
+                if (pack.index.type(i) == type) {
+                    hashes.add(pack.index.hash(i));
+                }
+            }
+        }
+        Collections.sort(hashes);
+        return hashes;
+    }
+}
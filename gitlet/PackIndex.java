@@ -0,0 +1,174 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.SortedMap;
+
+/** The index of a packfile, memory-mapped. The file holds
+ *
+ *      magic "GIDX" | version (4 bytes) | count (4 bytes)
+ *      fanout: 256 counts, entry B the number of hashes whose first byte is
+ *              at most B
+ *      hashes: COUNT raw 20-byte hashes, sorted
+ *      types:  COUNT ObjectFormat type bytes, in the same order
+ *      offsets: COUNT 8-byte offsets into the pack, in the same order
+ *
+ *  Lookups narrow the search to one fanout bucket and binary-search it
+ *  directly in the mapped file, without allocating.
+ *
+ *  @author Natalia Ramirez
+ */
+class PackIndex {
+    static final byte[] MAGIC = {'G', 'I', 'D', 'X'};
+    static final int VERSION = 2;
+    /** Number of bytes of a raw SHA-1 hash. */
+    static final int HASH_BYTES = 20;
+    /** Position of the fanout table in the file. */
+    private static final int FANOUT_START = 12;
+    /** Position of the sorted hashes in the file. */
+    private static final int HASHES_START = FANOUT_START + 256 * 4;
+
+    /** The whole index file. */
+    private final MappedByteBuffer map;
+    /** Number of objects in the pack. */
+    private final int count;
+    /** Position of the type bytes in the file. */
+    private final int typesStart;
+    /** Position of the offsets in the file. */
+    private final int offsetsStart;
+
+    /** Maps the index file INDEX. */
+    PackIndex(File index) {
+        try (FileChannel channel = FileChannel.open(index.toPath(), StandardOpenOption.READ)) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw Utils.error("Could not read %s: %s", index.getName(), excp.getMessage());
+        }
+        for (int i = 0; i < MAGIC.length; i += 1) {
+            if (map.limit() < HASHES_START || map.get(i) != MAGIC[i]) {
+                throw Utils.error("%s is not a pack index.", index.getName());
+            }
+        }
+        if (map.getInt(4) != VERSION) {
+            throw Utils.error("%s has an unsupported version.", index.getName());
+        }
+        count = map.getInt(8);
+        typesStart = HASHES_START + count * HASH_BYTES;
+        offsetsStart = typesStart + count;
+    }
+
+    /** Returns the number of objects in the pack. */
+    int size() {
+        return count;
+    }
+
+    /** Returns the position of HASH in this index, or -1 if the pack does not
+     *  hold it. */
+    int find(String hash) {
+        if (hash.length() != 2 * HASH_BYTES) {
+            return -1;
+        }
+        int first = hexByte(hash, 0);
+        if (first < 0) {
+            return -1;
+        }
+        int lo = first == 0 ? 0 : map.getInt(FANOUT_START + 4 * (first - 1));
+        int hi = map.getInt(FANOUT_START + 4 * first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(mid, hash, HASH_BYTES);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the ObjectFormat type of the object at position I. */
+    byte type(int i) {
+        return map.get(typesStart + i);
+    }
+
+    /** Returns the offset in the pack of the object at position I. */
+    long offset(int i) {
+        return map.getLong(offsetsStart + 8 * i);
+    }
+
+    /** Returns the hash of the object at position I. */
+    String hash(int i) {
+        char[] hex = new char[2 * HASH_BYTES];
+        for (int k = 0; k < HASH_BYTES; k += 1) {
+            int b = map.get(HASHES_START + i * HASH_BYTES + k) & 0xff;
+            hex[2 * k] = Character.forDigit(b >> 4, 16);
+            hex[2 * k + 1] = Character.forDigit(b & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    /** Compares the first BYTES bytes of the hash at position I with those of
+     *  the hexadecimal HASH, returning a negative number, zero or a positive
+     *  number as the stored hash is smaller, equal or larger. */
+    private int compare(int i, String hash, int bytes) {
+        int start = HASHES_START + i * HASH_BYTES;
+        for (int k = 0; k < bytes; k += 1) {
+            int stored = map.get(start + k) & 0xff;
+            int wanted = hexByte(hash, k);
+            if (stored != wanted) {
+                return stored - wanted;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns byte K of the hexadecimal HASH, or -1 if it is not hex. */
+    private static int hexByte(String hash, int k) {
+        int high = Character.digit(hash.charAt(2 * k), 16);
+        int low = Character.digit(hash.charAt(2 * k + 1), 16);
+        return high < 0 || low < 0 ? -1 : (high << 4) | low;
+    }
+
+    /** Writes the index of a pack holding the objects in OFFSETS, whose types
+     *  are in TYPES, to INDEX. */
+    static void write(File index, SortedMap<String, Long> offsets, Map<String, Byte> types) {
+        int[] fanout = new int[256];
+        for (String hash : offsets.keySet()) {
+            fanout[hexByte(hash, 0)] += 1;
+        }
+        for (int b = 1; b < fanout.length; b += 1) {
+            fanout[b] += fanout[b - 1];
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(index.toPath())))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(offsets.size());
+            for (int n : fanout) {
+                out.writeInt(n);
+            }
+            for (String hash : offsets.keySet()) {
+                for (int k = 0; k < HASH_BYTES; k += 1) {
+                    out.writeByte(hexByte(hash, k));
+                }
+            }
+            for (String hash : offsets.keySet()) {
+                out.writeByte(types.get(hash));
+            }
+            for (long offset : offsets.values()) {
+                out.writeLong(offset);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not write %s: %s", index.getName(), excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static gitlet.Utils.join;
+import static gitlet.Utils.plainFilenamesIn;
+
+/** The pack command: moves every loose blob, tree and commit into one new
+ *  packfile. Versions of the same path are stored as deltas against each
+ *  other where that saves space.
+ *
+ *  @author Natalia Ramirez
+ */
+class Packer {
+    /** Number of earlier versions of a path tried as the base of a delta. */
+    static final int WINDOW = 10;
+    /** Blobs larger than this are always stored whole. */
+    static final int MAX_DELTA_SIZE = 32 * 1024 * 1024;
+
+    /** Offset of every object written so far, by hash. */
+    private final TreeMap<String, Long> offsets = new TreeMap<>();
+    /** ObjectFormat type of every object written so far, by hash. */
+    private final Map<String, Byte> types = new HashMap<>();
+    /** Length of the delta chain below every object written so far. */
+    private final Map<String, Integer> depths = new HashMap<>();
+    /** Number of objects stored as deltas. */
+    private int deltas;
+    /** Bytes written to the pack so far. */
+    private long position;
+
+    /** Packs the loose objects of the repository and reports what it did. */
+    static void pack() {
+        List<String> looseCommits = new ArrayList<>(plainFilenamesIn(Repository.COMMIT_DIR));
+        List<String> looseBlobs = plainFilenamesIn(Repository.BLOB_DIR);
+        List<String> looseTrees = Repository.TREE_DIR.isDirectory()
+                ? new ArrayList<>(plainFilenamesIn(Repository.TREE_DIR)) : new ArrayList<>();
+        // objects still being written by another command
+        looseCommits.removeIf(fileName -> !fileName.endsWith(".txt"));
+        looseTrees.removeIf(fileName -> fileName.startsWith("tmp-"));
+        if (looseCommits.isEmpty() && looseBlobs.isEmpty() && looseTrees.isEmpty()) {
+            System.out.println("Nothing to pack.");
+            return;
+        }
+        Repository.PACK_DIR.mkdir();
+        Packer packer = new Packer();
+        String name = packer.write(looseCommits, looseTrees, looseBlobs);
+        // the pack must be on disk before the only other copies are gone
+        Journal.sync();
+        for (String fileName : looseCommits) {
+            join(Repository.COMMIT_DIR, fileName).delete();
+        }
+        for (String fileName : looseTrees) {
+            join(Repository.TREE_DIR, fileName).delete();
+        }
+        for (String fileName : looseBlobs) {
+            join(Repository.BLOB_DIR, fileName).delete();
+        }
+        PackFile.reload();
+        System.out.printf("Packed %d objects (%d as deltas) into pack-%s.%n",
+                packer.offsets.size(), packer.deltas, name);
+    }
+
+    /** Writes the commits in COMMITFILES, the trees in TREEHASHES and the
+     *  blobs in BLOBHASHES to a new pack and its index, and returns the name
+     *  of the pack. */
+    private String write(List<String> commitFiles, List<String> treeHashes,
+                         List<String> blobHashes) {
+        File temp = join(Repository.PACK_DIR, "tmp-" + System.nanoTime());
+        MessageDigest md = ObjectStore.newDigest();
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)), md))) {
+            out.write(PackFile.PACK_MAGIC);
+            out.writeInt(PackFile.VERSION);
+            out.writeInt(commitFiles.size() + treeHashes.size() + blobHashes.size());
+            position = PackFile.PACK_MAGIC.length + 8;
+            for (String fileName : commitFiles) {
+                String commitHash = fileName.substring(0, fileName.length() - ".txt".length());
+                writeWhole(out, commitHash, ObjectFormat.TYPE_COMMIT,
+                        ObjectFormat.read(join(Repository.COMMIT_DIR, fileName)));
+            }
+            for (String treeHash : treeHashes) {
+                writeWhole(out, treeHash, ObjectFormat.TYPE_TREE,
+                        ObjectFormat.read(ObjectStore.treeFile(treeHash)));
+            }
+            for (List<String> history : blobHistories(blobHashes)) {
+                writeHistory(out, history);
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw Utils.error("Could not write pack: %s", excp.getMessage());
+        }
+        String name = ObjectStore.toHex(md.digest());
+        File pack = join(Repository.PACK_DIR, "pack-" + name + ".pack");
+        if (!temp.renameTo(pack)) {
+            throw Utils.error("Could not write pack: cannot rename %s", temp.getName());
+        }
+        Journal.record(pack);
+        File index = join(Repository.PACK_DIR, "pack-" + name + ".idx");
+        temp = join(Repository.PACK_DIR, "tmp-" + System.nanoTime());
+        PackIndex.write(temp, offsets, types);
+        if (!temp.renameTo(index)) {
+            throw Utils.error("Could not write pack: cannot rename %s", temp.getName());
+        }
+        Journal.record(index);
+        return name;
+    }
+
+    /** Returns BLOBHASHES grouped by the path they are stored under in the
+     *  commits of the repository. A blob used under several paths is in the
+     *  first group only; blobs no commit uses form groups of their own. */
+    private static List<List<String>> blobHistories(List<String> blobHashes) {
+        Set<String> loose = new LinkedHashSet<>(blobHashes);
+        Map<String, List<String>> byPath = new LinkedHashMap<>();
+        for (String commitHash : ObjectStore.allCommitHashes()) {
+            Commit commit = ObjectStore.readCommit(commitHash);
+            for (Map.Entry<String, String> entry : commit.files().entrySet()) {
+                if (loose.remove(entry.getValue())) {
+                    byPath.computeIfAbsent(entry.getKey(), k -> new ArrayList<>())
+                            .add(entry.getValue());
+                }
+            }
+        }
+        List<List<String>> histories = new ArrayList<>(byPath.values());
+        for (String blobHash : loose) {
+            List<String> alone = new ArrayList<>();
+            alone.add(blobHash);
+            histories.add(alone);
+        }
+        return histories;
+    }
+
+    /** Writes the blobs in HISTORY, all versions of one path, to OUT. Each is
+     *  written as a delta against one of the WINDOW versions before it if
+     *  that is less than half its size. Versions are written largest first,
+     *  so a base is usually the newer and larger version. Blobs larger than
+     *  MAX_DELTA_SIZE are streamed whole from the store instead of read. */
+    private void writeHistory(DataOutputStream out, List<String> history) throws IOException {
+        history.sort(Comparator.comparingLong(ObjectStore::blobSize).reversed());
+        List<String> windowHashes = new ArrayList<>();
+        List<byte[]> windowContents = new ArrayList<>();
+        for (String blobHash : history) {
+            long size = ObjectStore.blobSize(blobHash);
+            if (size > MAX_DELTA_SIZE) {
+                writeWhole(out, blobHash, size);
+                continue;
+            }
+            byte[] contents = ObjectStore.readBlob(blobHash);
+            String bestBase = null;
+            byte[] bestDelta = null;
+            for (int i = 0; i < windowHashes.size(); i += 1) {
+                String base = windowHashes.get(i);
+                if (depths.get(base) >= PackFile.MAX_DEPTH) {
+                    continue;
+                }
+                byte[] delta = Delta.create(windowContents.get(i), contents);
+                if (delta.length < contents.length / 2
+                        && (bestDelta == null || delta.length < bestDelta.length)) {
+                    bestBase = base;
+                    bestDelta = delta;
+                }
+            }
+            if (bestBase == null) {
+                writeWhole(out, blobHash, ObjectFormat.TYPE_BLOB, contents);
+            } else {
+                writeDelta(out, blobHash, contents.length, bestBase, bestDelta);
+            }
+            windowHashes.add(blobHash);
+            windowContents.add(contents);
+            if (windowHashes.size() > WINDOW) {
+                windowHashes.remove(0);
+                windowContents.remove(0);
+            }
+        }
+    }
+
+    /** Writes the object HASH of type TYPE whose payload is PAYLOAD to OUT. */
+    private void writeWhole(DataOutputStream out, String hash, byte type,
+                            byte[] payload) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(type == ObjectFormat.TYPE_COMMIT ? PackFile.ENTRY_COMMIT
+                : type == ObjectFormat.TYPE_TREE ? PackFile.ENTRY_TREE : PackFile.ENTRY_BLOB);
+        Delta.writeVarLong(header, payload.length);
+        writeEntry(out, hash, type, header, payload);
+        depths.put(hash, 0);
+    }
+
+    /** Writes the stored blob HASH, SIZE bytes long, to OUT whole. It is
+     *  deflated from the store into a scratch file first, since the entry
+     *  gives the deflated length before the data, so that it is never held
+     *  in memory. */
+    private void writeWhole(DataOutputStream out, String hash, long size) throws IOException {
+        File scratch = join(Repository.PACK_DIR, "tmp-" + System.nanoTime());
+        Deflater deflater = new Deflater(Config.compressionLevel());
+        try {
+            try (InputStream in = ObjectStore.openBlob(hash);
+                 OutputStream deflated = new DeflaterOutputStream(
+                         new BufferedOutputStream(new FileOutputStream(scratch)), deflater)) {
+                in.transferTo(deflated);
+            }
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            header.write(PackFile.ENTRY_BLOB);
+            Delta.writeVarLong(header, size);
+            Delta.writeVarLong(header, scratch.length());
+            offsets.put(hash, position);
+            types.put(hash, ObjectFormat.TYPE_BLOB);
+            header.writeTo(out);
+            Files.copy(scratch.toPath(), out);
+            position += header.size() + scratch.length();
+            depths.put(hash, 0);
+        } finally {
+            deflater.end();
+            scratch.delete();
+        }
+    }
+
+    /** Writes blob HASH, SIZE bytes long, to OUT as DELTA against BASE. */
+    private void writeDelta(DataOutputStream out, String hash, long size,
+                            String base, byte[] delta) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(PackFile.ENTRY_DELTA);
+        Delta.writeVarLong(header, size);
+        Delta.writeVarLong(header, position - offsets.get(base));
+        writeEntry(out, hash, ObjectFormat.TYPE_BLOB, header, delta);
+        depths.put(hash, depths.get(base) + 1);
+        deltas += 1;
+    }
+
+    /** Writes an entry made of HEADER, then the length of the deflated DATA,
+     *  then the deflated DATA, and records it as object HASH of type TYPE. */
+    private void writeEntry(OutputStream out, String hash, byte type,
+                            ByteArrayOutputStream header, byte[] data) throws IOException {
+        byte[] compressed = deflate(data);
+        Delta.writeVarLong(header, compressed.length);
+        offsets.put(hash, position);
+        types.put(hash, type);
+        header.writeTo(out);
+        out.write(compressed);
+        position += header.size() + compressed.length;
+    }
+
+    /** Returns DATA deflated at the configured level. */
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Config.compressionLevel());
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+}
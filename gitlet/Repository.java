@@ -1,10 +1,22 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 
 import static gitlet.Utils.*;
 
@@ -39,20 +51,39 @@ public class Repository implements Serializable {
      * File staged for removal
      */
     public static final File BLOB_DIR = join(GITLET_DIR, "blobs");
+    /**
+     * The packfiles directory.
+     */
+    public static final File PACK_DIR = join(GITLET_DIR, "packs");
+    /**
+     * The trees directory.
+     */
+    public static final File TREE_DIR = join(GITLET_DIR, "trees");
+    /**
+     * The commit graph and the dates and messages it points into.
+     */
+    public static final File COMMIT_GRAPH = join(GITLET_DIR, "commit-graph");
+    public static final File COMMIT_MESSAGES = join(GITLET_DIR, "commit-messages");
+    /**
+     * The index of commit messages used by find, and its log of recent commits.
+     */
+    public static final File MESSAGE_INDEX = join(GITLET_DIR, "message-index");
+    public static final File MESSAGE_LOG = join(GITLET_DIR, "message-index.log");
     static File stagingAreaFile = join(Repository.STAGING_DIR, "stagingarea.txt");
 
 
     public static void init() {
         if (join(CWD, ".gitlet").exists()) {
-            System.out.println("A Gitlet version-control system already exists "
+            throw error("A Gitlet version-control system already exists "
                     + "in the current directory.");
-            System.exit(0);
         }
         GITLET_DIR.mkdir();
         BRANCH_DIR.mkdir();
         STAGING_DIR.mkdir();
         COMMIT_DIR.mkdir();
         BLOB_DIR.mkdir();
+        TREE_DIR.mkdir();
+        PACK_DIR.mkdir();
         BLOBS_ADDED.mkdir();
         try {
             stagingAreaFile.createNewFile();
@@ -60,50 +91,77 @@ public class Repository implements Serializable {
             ex.printStackTrace();
         }
         Commit initCommit = new Commit();
-        Branch master = new Branch("master", initCommit);
-        StagingArea initStagingArea = new StagingArea(initCommit, master);
-        Saving.saveCommit(initCommit);
-        Saving.saveBranch(master);
+        String initCommitHash = Saving.saveCommit(initCommit);
+        Branch master = new Branch("master", initCommitHash);
+        StagingArea initStagingArea = new StagingArea(initCommitHash, master.name);
+        Saving.saveBranch(master, null);
         Saving.saveStagingArea(initStagingArea);
 
     }
 
 
 
-    public static void add(String fileName) {
+    /** Stages the files named FILENAMES, and every file under those that are
+     *  directories. The files are hashed and copied in parallel. */
+    public static void add(String... fileNames) {
         // if the file does not exist in the current working directory, throw exception
-
-        if (!join(CWD, fileName).exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+        List<String> paths = new ArrayList<>();
+        for (String fileName : fileNames) {
+            File file = join(CWD, fileName);
+            if (!file.exists()) {
+                throw error("File does not exist.");
+            }
+            String path = WorkTree.relativePath(fileName);
+            if (file.isDirectory()) {
+                paths.addAll(WorkTree.walk(file, path.isEmpty() ? "" : path + "/"));
+            } else {
+                paths.add(path);
+            }
         }
         StagingArea staging = Saving.getStagingArea();
-        staging.toRemove.remove(fileName);
-        // If the current working version of the file is identical to the version in
-        // the current commit...
-        String thisBlobToAddHash = Saving.getBlobHashFromFile(join(CWD, fileName));
-        if (staging.headCommit.blobMap.containsKey(fileName)) {
-            String headCommitBlobHash = staging.headCommit.blobMap.get(fileName);
-            //PRINT STAGED TO REMOVE
-            if (headCommitBlobHash.equals(thisBlobToAddHash)) {
+        TreeMap<String, String> tracked = staging.headCommit().files();
+        StatCache statCache = RepositoryContext.get().statCache();
+        TreeMap<String, String> hashes;
+        try (Instrumentation.Timer timer = Instrumentation.time("stage-files")) {
+            hashes = WorkTree.map(paths,
+                fileName -> stageIfChanged(fileName, tracked.get(fileName), statCache));
+        }
+        for (Map.Entry<String, String> entry : hashes.entrySet()) {
+            String fileName = entry.getKey();
+            staging.toRemove.remove(fileName);
+            if (entry.getValue().equals(tracked.get(fileName))) {
                 // ...then do not stage it to be added, and remove it from the
                 // staging area if it is already there
                 staging.stagedToAdd.remove(fileName);
-                Saving.saveStagingArea(staging);
-                return;
+            } else {
+                staging.stagedToAdd.put(fileName, entry.getValue());
             }
-
-        }
-        File newFileForBlob = join(BLOBS_ADDED, thisBlobToAddHash);
-        try {
-            newFileForBlob.createNewFile();
-        } catch (IOException ex) {
-            ex.printStackTrace();
         }
-        writeContents(newFileForBlob, readContents(join(CWD, fileName)));
-        staging.stagedToAdd.put(fileName, thisBlobToAddHash);
         Saving.saveStagingArea(staging);
-        //PRINT STAGED TO REMOVE
+    }
+
+    /** Returns the hash of the working file FILENAME, copying it into the
+     *  staging scratch directory unless it still has HEADCOMMITBLOBHASH, the
+     *  hash it has in the head commit. */
+    private static String stageIfChanged(String fileName, String headCommitBlobHash,
+                                         StatCache statCache) {
+        File fileToAdd = join(CWD, fileName);
+        // If the current working version of the file is identical to the version in
+        // the current commit...
+        if (headCommitBlobHash != null
+                && ObjectStore.blobSize(headCommitBlobHash) == fileToAdd.length()) {
+            // same size, so it is probably unchanged: hash without copying first,
+            // and only if it changed since it was last hashed
+            String thisBlobToAddHash = statCache.hash(fileName, fileToAdd);
+            if (headCommitBlobHash.equals(thisBlobToAddHash)) {
+                return thisBlobToAddHash;
+            }
+        }
+        // hash and copy into the scratch directory in a single pass; the store
+        // is content-addressed, so a version committed before is not copied
+        String thisBlobToAddHash = ObjectStore.stageFile(fileToAdd);
+        statCache.record(fileName, fileToAdd, thisBlobToAddHash);
+        return thisBlobToAddHash;
     }
 
     // Description: Unstage the file if it is currently staged for addition.
@@ -118,17 +176,16 @@ public class Repository implements Serializable {
         // If the file is neither staged nor tracked by the head commit, throw exception
         StagingArea staging = Saving.getStagingArea();
         // Unstage the file if it is currently staged for addition.
-        if (!(staging.headCommit.blobMap.containsKey(fileName)
+        if (!(staging.headCommit().files().containsKey(fileName)
                 || staging.stagedToAdd.containsKey(fileName))) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+            throw error("No reason to remove the file.");
         }
         staging.stagedToAdd.remove(fileName);
         // If the file is tracked in the current commit, stage it for removal and remove the
         // file from the working directory
-        if (staging.headCommit.blobMap.containsKey(fileName)) {
+        if (staging.headCommit().files().containsKey(fileName)) {
             staging.toRemove.put(fileName, Saving.getBlobHashFromFile(join(CWD, fileName)));
-            restrictedDelete(join(CWD, fileName));
+            deleteWorkingFile(fileName);
         }
         Saving.saveStagingArea(staging);
     }
@@ -157,152 +214,423 @@ public class Repository implements Serializable {
     public static void commit(String message) {
         StagingArea staging = Saving.getStagingArea();
         if (message == null || message.equals("")) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw error("Please enter a commit message.");
         }
         // if filesToCommit and filesToRemove (staging area variables)
         // are both empty, throw exception
         if (staging.stagedToAdd.size() == 0 && staging.toRemove.size() == 0) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw error("No changes added to the commit.");
         }
         // create new commit, the parent commit of our new commit, and the blobMap of our
         // new commit's parent
-        Commit newCommit = new Commit(message);
+        Commit newCommit = new Commit(message, staging.headCommitHash, staging.headCommit());
         // remove all the files in our new commit's blobMap that are named fileName
-        Commit newCommit2 = removeFilesToBeRemoved(newCommit);
+        Commit newCommit2 = removeFilesToBeRemoved(newCommit, staging);
         // add (replace) files from head commit's blobMap that are staged for addition
         // the staging area
-        Commit newCommit3 = addFilesToBeAdded(newCommit2);
+        Commit newCommit3 = addFilesToBeAdded(newCommit2, staging);
 
-        Branch master = new Branch("master", newCommit3);
-        Saving.saveBranch(master);
-        StagingArea newStagingArea = new StagingArea(newCommit3, master);
-        Saving.saveCommit(newCommit3);
+        String newCommitHash = Saving.saveCommit(newCommit3);
+        Branch current = new Branch(staging.currentBranch, newCommitHash);
+        Saving.saveBranch(current, staging.headCommitHash);
+        StagingArea newStagingArea = new StagingArea(newCommitHash, current.name);
         Saving.saveStagingArea(newStagingArea);
     }
-    public static Commit removeFilesToBeRemoved(Commit newCommit) {
+    public static Commit removeFilesToBeRemoved(Commit newCommit, StagingArea staging) {
         // if stagingArea's filesToRemove hashset is not empty, then for
         // fileName in staging.filesToRemove,
         // remove all the files in our new commit's blobMap that
         // are named fileName
-        StagingArea staging = Saving.getStagingArea();
         if (!staging.toRemove.isEmpty()) {
             for (String fileName : staging.toRemove.keySet()) {
-                newCommit.blobMap.remove(fileName);
+                newCommit.remove(fileName);
             }
         }
         return newCommit;
     }
 
-    public static Commit addFilesToBeAdded(Commit newCommit) {
+    public static Commit addFilesToBeAdded(Commit newCommit, StagingArea staging) {
         // add (replace) files from head commit's blobMap that are
         // staged for addition the staging area
-        StagingArea staging = Saving.getStagingArea();
         if (!staging.stagedToAdd.isEmpty()) {
             for (String fileName : staging.stagedToAdd.keySet()) {
-                newCommit.blobMap.put(fileName, staging.stagedToAdd.get(fileName));
+                newCommit.put(fileName, staging.stagedToAdd.get(fileName));
             }
-            Saving.saveBlobs(newCommit);
+            Saving.saveBlobs(staging.stagedToAdd.values());
         }
         return newCommit;
     }
     public static void branch(String branchName) {
-        List<String> branchNames = Objects.requireNonNull(plainFilenamesIn(BRANCH_DIR));
-        if (branchNames.contains(branchName)) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+        if (RepositoryContext.get().hasBranch(branchName)) {
+            throw error("A branch with that name already exists.");
         }
-        Branch newBranch = new Branch(branchName, Saving.getStagingArea().headCommit);
-        Saving.saveBranch(newBranch);
+        Branch newBranch = new Branch(branchName, Saving.getStagingArea().headCommitHash);
+        Saving.saveBranch(newBranch, null);
     }
 
 
-    public static void log() {
-        System.out.println(Saving.allParentCommits(Saving.getStagingArea().headCommit));
+    /** Prints the history of the head commit, at most LIMIT entries. Entries
+     *  are written as they are read, so the first appear at once however
+     *  long the history is. */
+    public static void log(int limit) {
+        PrintWriter out = output();
+        Saving.allParentCommits(Saving.getStagingArea().headCommitHash, out, limit);
+        out.print("\n");
+        out.flush();
     }
-    public static void globallog() {
-        System.out.println(Saving.allCommits());
+    /** Prints every commit of the repository, at most LIMIT of them, as log
+     *  entries or, if JSON, as one JSON record per line. */
+    public static void globallog(int limit, boolean json) {
+        PrintWriter out = output();
+        Saving.allCommits(out, limit, json);
+        if (!json) {
+            out.print("\n");
+        }
+        out.flush();
     }
-    public static void find(String commitMessage) {
-        System.out.println(Saving.commitsFromMessage(commitMessage));
+    /** Prints the commits matching QUERY, at most LIMIT of them. MATCH is
+     *  "--word" to find messages with every word of QUERY, "--prefix" to
+     *  allow the last word to be the start of one, and null to find messages
+     *  equal to QUERY. */
+    public static void find(String query, String match, int limit) {
+        PrintWriter out = output();
+        if (Saving.commitsFromMessage(query, match, out, limit) == 0) {
+            out.print("Found no commit with that message.");
+        }
+        out.print("\n");
+        out.flush();
+    }
+
+    /** Prints the line diffs of the files that changed from the commit
+     *  FROMCOMMIT to the commit TOCOMMIT, which may be any unique prefixes
+     *  of commit ids. Without TOCOMMIT, the working tree is compared with
+     *  FROMCOMMIT, or, without FROMCOMMIT either, with the staging area;
+     *  files the staging area does not track are not compared. If STAGED,
+     *  the staging area is compared with the head commit instead. Files
+     *  whose blob hashes match are never read. */
+    public static void diff(String fromCommit, String toCommit, boolean staged) {
+        StagingArea staging = Saving.getStagingArea();
+        Map<String, String> from;
+        Map<String, String> to;
+        if (staged) {
+            from = staging.headCommit().files();
+            to = indexFiles(staging);
+        } else if (toCommit != null) {
+            String fromTree = ObjectStore.readCommit(resolveCommitId(fromCommit)).treeHash();
+            String toTree = ObjectStore.readCommit(resolveCommitId(toCommit)).treeHash();
+            // only the files in subtrees that differ are looked at
+            to = Tree.changes(fromTree, toTree);
+            from = new TreeMap<>();
+            for (String fileName : to.keySet()) {
+                from.put(fileName, Tree.find(fromTree, fileName));
+            }
+        } else {
+            from = fromCommit == null ? indexFiles(staging)
+                    : ObjectStore.readCommit(resolveCommitId(fromCommit)).files();
+            to = WorkTree.hash(new ArrayList<>(from.keySet()),
+                    RepositoryContext.get().statCache());
+        }
+        BufferedOutputStream out = new BufferedOutputStream(System.out, 64 * 1024);
+        try (Instrumentation.Timer timer = Instrumentation.time("diff-files")) {
+            Diff.files(from, to, !staged && toCommit == null, out);
+            out.flush();
+        } catch (IOException excp) {
+            throw error("Could not diff: %s", excp.getMessage());
+        }
+    }
+
+    /** Returns the files the staging area STAGING tracks, with their blob
+     *  hashes: those of the head commit with the staged changes made. */
+    private static TreeMap<String, String> indexFiles(StagingArea staging) {
+        TreeMap<String, String> files = new TreeMap<>(staging.headCommit().files());
+        files.putAll(staging.stagedToAdd);
+        files.keySet().removeAll(staging.toRemove.keySet());
+        return files;
+    }
+
+    /** Returns a buffered writer on standard output. Callers flush it. */
+    private static PrintWriter output() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out),
+                64 * 1024));
     }
 
     public static void rmbranch(String branchName) {
-        List<String> branchNames = Objects.requireNonNull(plainFilenamesIn(BRANCH_DIR));
         StagingArea staging = Saving.getStagingArea();
-        if (!branchNames.contains(branchName)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+        if (!RepositoryContext.get().hasBranch(branchName)) {
+            throw error("A branch with that name does not exist.");
         }
-        Branch branch = readObject(join(BRANCH_DIR, branchName), Branch.class);
-        if (branch.commitHash.equals(Saving.commitHash(staging.headCommit))) {
+        if (branchName.equals(staging.currentBranch)) {
             System.out.println("Cannot remove the current branch.");
         }
     }
+    public static void pack() {
+        Packer.pack();
+    }
+
+    /** Deletes the objects and staged files nothing refers to any more,
+     *  sparing recent ones unless NOW. */
+    public static void gc(boolean now) {
+        GarbageCollector.collect(now);
+    }
+
     public static void status() {
         if (!join(CWD, ".gitlet").exists()) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw error("Not in an initialized Gitlet directory.");
         }
         System.out.println(Saving.printStatus());
     }
     public static void checkout1(String fileName) {
         // If the file does not exist in the previous commit, abort
-        if (!Saving.getStagingArea().headCommit.blobMap.containsKey(fileName)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+        Commit headCommit = Saving.getStagingArea().headCommit();
+        if (!headCommit.files().containsKey(fileName)) {
+            throw error("File does not exist in that commit.");
         }
         // get file from head commit by getting the hash from the blobMap and
         // then searching through the
         // blob directory for a file with the same hash. Then, write this file onto
         // a new file in the CWD
         // to replace the one we just deleted.
-        String hashOfOldFile = Saving.getStagingArea().headCommit.blobMap.get(fileName);
+        String hashOfOldFile = headCommit.files().get(fileName);
         File currentFile = join(CWD, fileName);
-        File oldFile = join(BLOB_DIR, hashOfOldFile);
-        writeContents(currentFile, readContents(oldFile));
+        ObjectStore.copyBlobTo(hashOfOldFile, currentFile);
+        RepositoryContext.get().statCache().record(fileName, currentFile, hashOfOldFile);
     }
 
-    public static void checkout2(String commitID, String fileName) {
-        if (!join(COMMIT_DIR, commitID + ".txt").exists()) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+    /** Returns the full id of the commit COMMITID names, which may be any
+     *  unique prefix of at least four characters. */
+    static String resolveCommitId(String commitID) {
+        List<String> matches = ObjectStore.commitsWithPrefix(commitID, 2);
+        if (matches.isEmpty()) {
+            throw error("No commit with that id exists.");
         }
-        Commit commitGiven = readObject(join(COMMIT_DIR, commitID + ".txt"), Commit.class);
-        if (!commitGiven.blobMap.containsKey(fileName)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+        if (matches.size() > 1) {
+            throw error("Commit id %s is ambiguous; it is a prefix of more than one commit.",
+                    commitID);
         }
-        File currentWorkingFile = join(CWD, fileName);
-        try {
-            currentWorkingFile.createNewFile();
-        } catch (IOException ex) {
-            ex.printStackTrace();
+        return matches.get(0);
+    }
+
+    public static void checkout2(String commitID, String fileName) {
+        commitID = resolveCommitId(commitID);
+        Commit commitGiven = ObjectStore.readCommit(commitID);
+        if (!commitGiven.files().containsKey(fileName)) {
+            throw error("File does not exist in that commit.");
         }
-        String blobHashGiven = commitGiven.blobMap.get(fileName);
-        writeContents(currentWorkingFile, readContents(join(BLOB_DIR, blobHashGiven)));
+        File currentWorkingFile = join(CWD, fileName);
+        String blobHashGiven = commitGiven.files().get(fileName);
+        ObjectStore.copyBlobTo(blobHashGiven, currentWorkingFile);
+        RepositoryContext.get().statCache().record(fileName, currentWorkingFile, blobHashGiven);
     }
 
+    /** Checks out the head commit of the branch BRANCHNAMETOCHECKOUT and
+     *  makes it the current branch. */
     public static void checkout3(String branchNameToCheckout) {
-        if (!join(BRANCH_DIR, branchNameToCheckout).exists()) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
-        }
-        Branch branchGiven = readObject(join(BRANCH_DIR, branchNameToCheckout), Branch.class);
-        if (branchGiven.commitHash.equals(Saving.getStagingArea().masterBranch.commitHash)) {
-            System.out.println("No need to checkout the current branch.");
-            System.exit(0);
+        if (!RepositoryContext.get().hasBranch(branchNameToCheckout)) {
+            throw error("No such branch exists.");
         }
-        Commit commitToCheckoutTo = readObject(join(COMMIT_DIR, branchGiven.commitHash + ".txt"),
-                Commit.class);
-        for (String fileName: commitToCheckoutTo.blobMap.keySet()) {
-            checkout2(branchGiven.commitHash, fileName);
+        Branch branchGiven = Saving.getBranch(branchNameToCheckout);
+        StagingArea staging = Saving.getStagingArea();
+        if (branchNameToCheckout.equals(staging.currentBranch)) {
+            throw error("No need to checkout the current branch.");
         }
-        StagingArea clearedStagingArea = new StagingArea(commitToCheckoutTo, branchGiven);
+        Commit commitToCheckoutTo = ObjectStore.readCommit(branchGiven.commitHash);
+        checkoutTree(staging, commitToCheckoutTo.treeHash());
+        StagingArea clearedStagingArea = new StagingArea(branchGiven.commitHash,
+                branchGiven.name);
         Saving.saveStagingArea(clearedStagingArea);
     }
 
+    /** Replaces the working files of the head commit of STAGING with those
+     *  of the snapshot TOTREE. Only the files whose blobs differ between the
+     *  two trees are touched: those TOTREE does not have are deleted, and
+     *  the others are written in parallel. */
+    private static void checkoutTree(StagingArea staging, String toTree) {
+        String currentTree = staging.headCommit().treeHash();
+        TreeMap<String, String> changes = Tree.changes(currentTree, toTree);
+        List<String> deleted = new ArrayList<>();
+        List<String> written = new ArrayList<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                deleted.add(change.getKey());
+            } else {
+                written.add(change.getKey());
+            }
+        }
+        checkNotUntracked(written, staging);
+        StatCache statCache = RepositoryContext.get().statCache();
+        try (Instrumentation.Timer timer = Instrumentation.time("checkout-files")) {
+            // deletions go first, since a file may be replaced by a directory
+            // of the same name or the other way around
+            for (String fileName : deleted) {
+                deleteWorkingFile(fileName);
+                statCache.forget(fileName);
+            }
+            WorkTree.map(written, fileName -> {
+                File file = join(CWD, fileName);
+                ObjectStore.copyBlobTo(changes.get(fileName), file);
+                statCache.record(fileName, file, changes.get(fileName));
+                return null;
+            });
+        }
+    }
+
+    /** Fails if any of FILENAMES, which are about to be written, is a working
+     *  file that neither the head commit of STAGING nor STAGING tracks. The
+     *  files of the head commit are flattened once, when the first working
+     *  file in the way is found. */
+    private static void checkNotUntracked(List<String> fileNames, StagingArea staging) {
+        Map<String, String> tracked = null;
+        for (String fileName : fileNames) {
+            if (!join(CWD, fileName).exists() || staging.stagedToAdd.containsKey(fileName)) {
+                continue;
+            }
+            if (tracked == null) {
+                tracked = staging.headCommit().files();
+            }
+            if (!tracked.containsKey(fileName)) {
+                throw error("There is an untracked file in the way; delete it, "
+                        + "or add and commit it first.");
+            }
+        }
+    }
+
+    /** Merges the head of the branch BRANCHNAME into the current branch.
+     *  The split point is found through the generation numbers of the
+     *  commit graph. A file changed on the given branch since then is taken
+     *  from it unless the current branch changed it differently too, in
+     *  which case both versions are written into it between conflict
+     *  markers. Files are merged in parallel, and the result is committed
+     *  with both heads as parents. */
+    public static void merge(String branchName) {
+        StagingArea staging = Saving.getStagingArea();
+        if (!staging.stagedToAdd.isEmpty() || !staging.toRemove.isEmpty()) {
+            throw error("You have uncommitted changes.");
+        }
+        if (!RepositoryContext.get().hasBranch(branchName)) {
+            throw error("A branch with that name does not exist.");
+        }
+        if (branchName.equals(staging.currentBranch)) {
+            throw error("Cannot merge a branch with itself.");
+        }
+        String headHash = staging.headCommitHash;
+        String otherHash = Saving.getBranch(branchName).commitHash;
+        int head = CommitGraph.position(headHash);
+        int other = CommitGraph.position(otherHash);
+        if (head < 0) {
+            throw error("Commit %s, the head of the current branch, is missing.", headHash);
+        }
+        if (other < 0) {
+            throw error("Commit %s, the head of branch %s, is missing.", otherHash, branchName);
+        }
+        CommitGraph graph = CommitGraph.get();
+        int base = graph.mergeBase(head, other);
+        if (base == other) {
+            System.out.println("Given branch is an ancestor of the current branch.");
+            return;
+        }
+        Commit otherCommit = ObjectStore.readCommit(otherHash);
+        if (base == head) {
+            checkoutTree(staging, otherCommit.treeHash());
+            Saving.saveBranch(new Branch(staging.currentBranch, otherHash), headHash);
+            Saving.saveStagingArea(new StagingArea(otherHash, staging.currentBranch));
+            System.out.println("Current branch fast-forwarded.");
+            return;
+        }
+        String baseTree = base == CommitGraph.NO_PARENT ? null
+                : ObjectStore.readCommit(graph.hash(base)).treeHash();
+        Commit headCommit = staging.headCommit();
+        TreeMap<String, String> ours = Tree.changes(baseTree, headCommit.treeHash());
+        TreeMap<String, String> theirs = Tree.changes(baseTree, otherCommit.treeHash());
+        List<String> deleted = new ArrayList<>();
+        List<String> written = new ArrayList<>();
+        Set<String> conflicts = new HashSet<>();
+        for (Map.Entry<String, String> change : theirs.entrySet()) {
+            String fileName = change.getKey();
+            if (ours.containsKey(fileName)) {
+                // changed on both sides: a conflict unless changed alike
+                if (!Objects.equals(ours.get(fileName), change.getValue())) {
+                    conflicts.add(fileName);
+                    written.add(fileName);
+                }
+            } else if (change.getValue() == null) {
+                deleted.add(fileName);
+            } else {
+                written.add(fileName);
+            }
+        }
+        checkNotUntracked(written, staging);
+
+        Commit mergeCommit = new Commit("Merged " + branchName + " into "
+                + staging.currentBranch + ".", headHash, headCommit);
+        mergeCommit.secondParentHash = otherHash;
+        StatCache statCache = RepositoryContext.get().statCache();
+        TreeMap<String, String> merged;
+        try (Instrumentation.Timer timer = Instrumentation.time("merge-files")) {
+            for (String fileName : deleted) {
+                deleteWorkingFile(fileName);
+                statCache.forget(fileName);
+                mergeCommit.remove(fileName);
+            }
+            merged = WorkTree.map(written, fileName -> {
+                File file = join(CWD, fileName);
+                String blobHash = theirs.get(fileName);
+                if (conflicts.contains(fileName)) {
+                    writeConflict(file, ours.get(fileName), blobHash);
+                    blobHash = ObjectStore.stageFile(file);
+                } else {
+                    ObjectStore.copyBlobTo(blobHash, file);
+                }
+                statCache.record(fileName, file, blobHash);
+                return blobHash;
+            });
+        }
+        for (Map.Entry<String, String> entry : merged.entrySet()) {
+            mergeCommit.put(entry.getKey(), entry.getValue());
+        }
+        List<String> conflictBlobs = new ArrayList<>();
+        for (String fileName : conflicts) {
+            conflictBlobs.add(merged.get(fileName));
+        }
+        Saving.saveBlobs(conflictBlobs);
+        String mergeHash = Saving.saveCommit(mergeCommit);
+        Saving.saveBranch(new Branch(staging.currentBranch, mergeHash), headHash);
+        Saving.saveStagingArea(new StagingArea(mergeHash, staging.currentBranch));
+        if (!conflicts.isEmpty()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /** Writes FILE as the conflict between the blobs OURS and THEIRS, either
+     *  of which is null for a deleted file: both contents between conflict
+     *  markers, streamed from the store in a single pass. */
+    private static void writeConflict(File file, String ours, String theirs) {
+        file.getParentFile().mkdirs();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            out.write("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8));
+            if (ours != null) {
+                ObjectStore.copyBlobTo(ours, out);
+            }
+            out.write("=======\n".getBytes(StandardCharsets.UTF_8));
+            if (theirs != null) {
+                ObjectStore.copyBlobTo(theirs, out);
+            }
+            out.write(">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw error("Could not write %s: %s", file.getName(), excp.getMessage());
+        }
+    }
+
+    /** Deletes the working file FILENAME, and then the directories it was in
+     *  that it leaves empty. */
+    private static void deleteWorkingFile(String fileName) {
+        File file = join(CWD, fileName);
+        file.delete();
+        File dir = file.getParentFile();
+        while (!dir.equals(CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
 }
 
 //    writeContents and readContents should only be used on actual files
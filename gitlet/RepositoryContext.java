@@ -0,0 +1,273 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import static gitlet.Utils.join;
+
+/** The repository state one command works on. The staging index and the
+ *  branches are read at most once per command, however many times the
+ *  command asks for them, and whatever the command changes is kept here
+ *  until close writes it all out in one go. What was read is also kept for
+ *  later commands, which is what makes a long-running Server fast; it is
+ *  read again once its file has been changed by anyone else.
+ *
+ *  @author Natalia Ramirez
+ */
+class RepositoryContext {
+    /** The context of the command being run. */
+    private static RepositoryContext current;
+    /** What earlier commands read or wrote, by file. */
+    private static final Map<File, Cached> CACHE = new HashMap<>();
+
+    /** The staging index, once read. */
+    private StagingArea staging;
+    /** True if staging must be written back. */
+    private boolean stagingChanged;
+    /** The stat cache of the working files, once read. */
+    private StatCache statCache;
+    /** The names of all branches, once listed. */
+    private List<String> branchNames;
+    /** The branches read so far, by name. */
+    private final Map<String, Branch> branches = new TreeMap<>();
+    /** The branches to write back, by name. */
+    private final Map<String, Branch> changedBranches = new TreeMap<>();
+    /** The commit each changed branch must still point to when it is
+     *  written back, or null if it must not exist yet, by name. */
+    private final Map<String, String> expectedHashes = new TreeMap<>();
+    /** The lock on the repository, if this command holds it. */
+    private RepositoryLock lock;
+
+    /** Starts a new command that only reads, forgetting whatever the previous
+     *  one read that has changed on disk since. */
+    static RepositoryContext open() {
+        return open(false);
+    }
+
+    /** Starts a new command, which locks the repository first if WRITES. */
+    static RepositoryContext open(boolean writes) {
+        current = new RepositoryContext();
+        Instrumentation.reset();
+        if (writes) {
+            // before anything is read, so nothing read can be stale
+            current.lock = RepositoryLock.acquire();
+        }
+        CommitGraph.refresh();
+        PackFile.refresh();
+        return current;
+    }
+
+    /** Returns the context of the command being run. */
+    static RepositoryContext get() {
+        if (current == null) {
+            open();
+        }
+        return current;
+    }
+
+    /** Writes out everything the command being run changed. */
+    static void close() {
+        if (current != null) {
+            try {
+                current.flush();
+            } finally {
+                current.unlock();
+            }
+            current = null;
+        }
+    }
+
+    /** Ends a command that failed without writing anything it changed. The
+     *  objects it read may have been changed in memory, so they are all
+     *  forgotten. */
+    static void discard() {
+        if (current != null) {
+            current.unlock();
+        }
+        current = null;
+        CACHE.clear();
+        Journal.discard();
+    }
+
+    /** Returns the staging index. */
+    StagingArea staging() {
+        if (staging == null) {
+            try (Instrumentation.Timer timer = Instrumentation.time("read-staging")) {
+                staging = read(stagingFile(), Codec::decodeStagingArea);
+            }
+        }
+        return staging;
+    }
+
+    /** Makes STAGINGAREA the staging index, to be written on close. */
+    void setStaging(StagingArea stagingArea) {
+        staging = stagingArea;
+        stagingChanged = true;
+    }
+
+    /** Returns the stat cache of the working files. */
+    StatCache statCache() {
+        if (statCache == null) {
+            File file = statCacheFile();
+            statCache = file.isFile()
+                    ? read(file, bytes -> ObjectFormat.deserialize(bytes, StatCache.class))
+                    : new StatCache();
+        }
+        return statCache;
+    }
+
+    /** Returns the names of all branches, in order. */
+    List<String> branchNames() {
+        if (branchNames == null) {
+            List<String> names = Utils.plainFilenamesIn(Repository.BRANCH_DIR);
+            branchNames = names == null ? new ArrayList<>() : new ArrayList<>(names);
+        }
+        return branchNames;
+    }
+
+    /** True if there is a branch named NAME. */
+    boolean hasBranch(String name) {
+        return branchNames().contains(name);
+    }
+
+    /** Returns the branch named NAME, which must exist. */
+    Branch branch(String name) {
+        Branch branch = branches.get(name);
+        if (branch == null) {
+            try (Instrumentation.Timer timer = Instrumentation.time("read-branch")) {
+                branch = read(join(Repository.BRANCH_DIR, name), Codec::decodeBranch);
+            }
+            branches.put(name, branch);
+        }
+        return branch;
+    }
+
+    /** Makes BRANCH point where it says, to be written on close if the
+     *  branch then still points to EXPECTEDHASH, or does not exist if
+     *  EXPECTEDHASH is null. */
+    void putBranch(Branch branch, String expectedHash) {
+        if (!changedBranches.containsKey(branch.name)) {
+            expectedHashes.put(branch.name, expectedHash);
+        }
+        if (!hasBranch(branch.name)) {
+            branchNames.add(branch.name);
+            branchNames.sort(null);
+        }
+        branches.put(branch.name, branch);
+        changedBranches.put(branch.name, branch);
+    }
+
+    /** Writes the changed branches, the staging index and the stat cache,
+     *  once the objects the command wrote are on disk (see Journal). */
+    private void flush() {
+        if (lock == null) {
+            if (stagingChanged || !changedBranches.isEmpty()) {
+                lock = RepositoryLock.acquire();
+            } else if (statCache != null && statCache.changed) {
+                // only a cache: not worth waiting for
+                lock = RepositoryLock.tryAcquire();
+                if (lock == null) {
+                    return;
+                }
+            }
+        }
+        try (Instrumentation.Timer timer = Instrumentation.time("flush")) {
+            write();
+        }
+    }
+
+    /** Releases the lock on the repository, if held. */
+    private void unlock() {
+        if (lock != null) {
+            lock.release();
+            lock = null;
+        }
+    }
+
+    /** Fails unless every changed branch still points where this command
+     *  expects it to on disk. */
+    private void checkBranches() {
+        for (Branch branch : changedBranches.values()) {
+            File file = join(Repository.BRANCH_DIR, branch.name);
+            String onDisk = file.isFile()
+                    ? Codec.decodeBranch(Utils.readContents(file)).commitHash : null;
+            if (!Objects.equals(onDisk, expectedHashes.get(branch.name))) {
+                throw Utils.error("Branch %s was changed by another command; try again.",
+                        branch.name);
+            }
+        }
+    }
+
+    /** Writes what flush writes. */
+    private void write() {
+        checkBranches();
+        Map<File, byte[]> contents = new LinkedHashMap<>();
+        Map<File, Object> values = new HashMap<>();
+        for (Branch branch : changedBranches.values()) {
+            File file = join(Repository.BRANCH_DIR, branch.name);
+            contents.put(file, Codec.encode(branch));
+            values.put(file, branch);
+        }
+        if (stagingChanged) {
+            contents.put(stagingFile(), Codec.encode(staging));
+            values.put(stagingFile(), staging);
+        }
+        if (statCache != null && statCache.changed) {
+            statCache.writtenAt = System.currentTimeMillis();
+            contents.put(statCacheFile(), Utils.serialize(statCache));
+            values.put(statCacheFile(), statCache);
+            statCache.changed = false;
+        }
+        Journal.commit(contents);
+        for (Map.Entry<File, Object> entry : values.entrySet()) {
+            CACHE.put(entry.getKey(), new Cached(Utils.stamp(entry.getKey()), entry.getValue()));
+        }
+        changedBranches.clear();
+        expectedHashes.clear();
+        stagingChanged = false;
+    }
+
+    /** Returns the object in FILE, decoded by DECODE, or the object read or
+     *  written before if FILE has not changed since. */
+    @SuppressWarnings("unchecked")
+    private static <T> T read(File file, Function<byte[], T> decode) {
+        String stamp = Utils.stamp(file);
+        Cached cached = CACHE.get(file);
+        if (cached != null && stamp != null && stamp.equals(cached.stamp)) {
+            return (T) cached.value;
+        }
+        // stamped before reading, so a change made meanwhile is seen next time
+        T value = decode.apply(Utils.readContents(file));
+        CACHE.put(file, new Cached(stamp, value));
+        return value;
+    }
+
+    /** An object read from or written to a file, and the stamp the file had
+     *  then. */
+    private static class Cached {
+        private final String stamp;
+        private final Object value;
+
+        Cached(String stamp, Object value) {
+            this.stamp = stamp;
+            this.value = value;
+        }
+    }
+
+    /** Returns the file holding the staging index. */
+    private static File stagingFile() {
+        return join(Repository.STAGING_DIR, "stagingarea.txt");
+    }
+
+    /** Returns the file holding the stat cache. */
+    private static File statCacheFile() {
+        return join(Repository.STAGING_DIR, "statcache");
+    }
+}
@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+import static gitlet.Utils.join;
+
+/** The lock a command holds on the repository while it reads and then
+ *  replaces the staging index and the branches, so that two commands run
+ *  at once cannot lose each other's changes. It is an operating system
+ *  lock on .gitlet/index.lock, released when the command ends or its
+ *  process dies. Commands that only read take no lock: the files they
+ *  read are always replaced whole through a rename.
+ *
+ *  @author Natalia Ramirez
+ */
+class RepositoryLock {
+    /** Name of the lock file in the .gitlet directory. */
+    static final String FILE = "index.lock";
+
+    /** The open lock file. */
+    private final FileChannel channel;
+    /** The lock on it. */
+    private final FileLock lock;
+
+    private RepositoryLock(FileChannel channel, FileLock lock) {
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /** Returns the lock, waiting for another command to release it, or null
+     *  if there is no repository to lock. */
+    static RepositoryLock acquire() {
+        return open(true);
+    }
+
+    /** Returns the lock, or null if another command holds it or there is no
+     *  repository to lock. */
+    static RepositoryLock tryAcquire() {
+        return open(false);
+    }
+
+    /** Locks the repository, waiting for the lock if WAIT. */
+    private static RepositoryLock open(boolean wait) {
+        if (!Repository.GITLET_DIR.isDirectory()) {
+            return null;
+        }
+        FileChannel channel = null;
+        try (Instrumentation.Timer timer = Instrumentation.time("lock")) {
+            channel = FileChannel.open(join(Repository.GITLET_DIR, FILE).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = wait ? channel.lock() : channel.tryLock();
+            if (lock == null) {
+                channel.close();
+                return null;
+            }
+            return new RepositoryLock(channel, lock);
+        } catch (IOException excp) {
+            close(channel);
+            throw Utils.error("Could not lock the repository: %s", excp.getMessage());
+        }
+    }
+
+    /** Releases the lock. */
+    void release() {
+        try {
+            lock.release();
+        } catch (IOException excp) {
+            // closing the channel releases it too
+        }
+        close(channel);
+    }
+
+    /** Closes CHANNEL, if any, ignoring errors. */
+    private static void close(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            // nothing to do
+        }
+    }
+}
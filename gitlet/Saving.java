@@ -1,131 +1,196 @@
 package gitlet;
 
 import java.io.File;
-import java.io.IOException;
-import java.util.Collections;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
-import static gitlet.Repository.BRANCH_DIR;
 import static gitlet.Utils.sha1;
-import static gitlet.Utils.readObject;
-import static gitlet.Utils.readContents;
-import static gitlet.Utils.join;
-import static gitlet.Utils.plainFilenamesIn;
-import static gitlet.Utils.writeObject;
-import static gitlet.Utils.writeContents;
-import static gitlet.Utils.serialize;
 
 public class Saving {
     public static String getBlobHashFromFile(File blobFile) {
-        return sha1(readContents(blobFile));
+        return ObjectStore.hashFile(blobFile);
     }
+    /** Returns the staging area, read at most once per command. */
     public static StagingArea getStagingArea() {
-        File stagingAreaFileToReturn = join(Repository.STAGING_DIR, "stagingarea.txt");
-        return readObject(stagingAreaFileToReturn, StagingArea.class);
+        return RepositoryContext.get().staging();
     }
 
-    public static void saveCommit(Commit commit) {
-        String commitHash = commitHash(commit);
+    /** Stores COMMIT and returns its hash. */
+    public static String saveCommit(Commit commit) {
+        commit.writeTrees();
+        byte[] serialized = Codec.encode(commit);
+        String commitHash = sha1(serialized);
         if (commit.parentHash.equals("initial commit")) {
             Commit.initCommitHash = commitHash;
         }
-        File commitFile = join(Repository.COMMIT_DIR, commitHash + ".txt");
-        try {
-            commitFile.createNewFile();
-        } catch (IOException e) {
-            System.out.println("File does not exist");
+        try (Instrumentation.Timer timer = Instrumentation.time("write-commit")) {
+            boolean isNew = !ObjectStore.containsCommit(commitHash);
+            ObjectStore.writeCommit(commitHash, serialized);
+            CommitGraph.append(commitHash, commit);
+            if (isNew) {
+                MessageIndex.append(commitHash, commit.message);
+            }
         }
-        writeObject(commitFile, commit);
+        return commitHash;
     }
 
     public static String commitHash(Commit commit) {
-        return sha1(serialize(commit));
+        return sha1(Codec.encode(commit));
     }
 
+    /** Saves STAGING as the staging area when the command finishes. */
     public static void saveStagingArea(StagingArea staging) {
-        File stagingAreaFileToSave = join(Repository.STAGING_DIR, "stagingarea.txt");
-        try {
-            stagingAreaFileToSave.createNewFile();
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        }
-        writeObject(stagingAreaFileToSave, staging);
-    }
-    public static void saveBranch(Branch branch) {
-        File newBranchFile = join(BRANCH_DIR, branch.name);
-        try {
-            newBranchFile.createNewFile();
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        }
-        writeObject(newBranchFile, branch);
-    }
-
-    public static void saveBlobs(Commit newCommit) {
-        for (String fileName : newCommit.blobMap.keySet()) {
-            String blobHash = newCommit.blobMap.get(fileName);
-            File newBlobFile = join(Repository.BLOB_DIR, blobHash);
-            try {
-                newBlobFile.createNewFile();
-            } catch (IOException ex) {
-                ex.printStackTrace();
+        RepositoryContext.get().setStaging(staging);
+    }
+
+    /** Saves BRANCH when the command finishes, provided the branch then
+     *  still points to the commit EXPECTEDHASH, or does not exist yet if
+     *  EXPECTEDHASH is null. */
+    public static void saveBranch(Branch branch, String expectedHash) {
+        RepositoryContext.get().putBranch(branch, expectedHash);
+    }
+
+    /** Returns the branch named BRANCHNAME, read at most once per command. */
+    public static Branch getBranch(String branchName) {
+        return RepositoryContext.get().branch(branchName);
+    }
+
+    /** Stores the blobs in STAGEDBLOBHASHES. Blobs a commit inherits from its
+     *  parent are already in the store and are not touched. */
+    public static void saveBlobs(Collection<String> stagedBlobHashes) {
+        try (Instrumentation.Timer timer = Instrumentation.time("store-blobs")) {
+            ObjectStore.storeStaged(stagedBlobHashes);
+        }
+    }
+
+    /** Writes the log of the commit HEADCOMMITHASH and its ancestors to OUT,
+     *  newest first, one entry at a time, stopping after LIMIT entries. The
+     *  history is read from the commit graph, not from the commits. */
+    public static void allParentCommits(String headCommitHash, PrintWriter out, int limit) {
+        try (Instrumentation.Timer timer = Instrumentation.time("walk-history")) {
+            int i = CommitGraph.position(headCommitHash);
+            CommitGraph graph = CommitGraph.get();
+            for (int n = 0; n < limit && i != CommitGraph.NO_PARENT; n += 1) {
+                out.print("===\n");
+                out.print("commit " + graph.hash(i) + "\n");
+                if (graph.secondParent(i) != CommitGraph.NO_PARENT) {
+                    out.print(mergeLine(graph.hash(graph.parent(i)),
+                            graph.hash(graph.secondParent(i))));
+                }
+                out.print("Date: " + graph.date(i) + "\n");
+                out.print(graph.message(i) + "\n" + "\n");
+                i = graph.parent(i);
             }
-            writeContents(newBlobFile, readContents(join(Repository.BLOBS_ADDED, blobHash)));
         }
     }
 
-    public static String allParentCommits(Commit commit) {
-        String log = "===\n";
-        log = log.concat("commit " + getStagingArea().masterBranch.commitHash + "\n");
-        log = log.concat("Date: " + commit.dateCommit + "\n");
-        log = log.concat(commit.message + "\n" + "\n");
+    /** Number of commits read and formatted together by allCommits. */
+    static final int LOG_BATCH = 512;
 
-        while (!commit.parentHash.equals("initParentHash")) {
-            File parentCommitFile = join(Repository.COMMIT_DIR, commit.parentHash + ".txt");
-            commit = readObject(parentCommitFile, Commit.class);
-            log = log.concat("===\n");
-            log = log.concat("commit " + commitHash(commit) + "\n");
-            log = log.concat("Date: " + commit.dateCommit + "\n");
-            log = log.concat(commit.message + "\n" + "\n");
+    /** Writes the log entries of at most LIMIT commits of the repository to
+     *  OUT, in order of their hashes, or one JSON record per line if JSON.
+     *  Commits are read and formatted in parallel, LOG_BATCH at a time, so
+     *  memory does not grow with the number of commits. */
+    public static void allCommits(PrintWriter out, int limit, boolean json) {
+        List<String> hashes = ObjectStore.allCommitHashes();
+        hashes = hashes.subList(0, Math.min(limit, hashes.size()));
+        for (int start = 0; start < hashes.size(); start += LOG_BATCH) {
+            List<String> batch = hashes.subList(start,
+                    Math.min(start + LOG_BATCH, hashes.size()));
+            // the stored name already is the hash; there is no need to
+            // serialize the commit again to get it
+            TreeMap<String, String> entries;
+            try (Instrumentation.Timer timer = Instrumentation.time("read-commits")) {
+                entries = WorkTree.map(batch, hash -> {
+                    Commit commit = ObjectStore.readCommit(hash);
+                    return json ? jsonRecord(hash, commit) : logEntry(hash, commit);
+                });
+            }
+            for (String entry : entries.values()) {
+                out.print(entry);
+            }
         }
-        return log;
     }
 
-    public static String allCommits() {
-        String log = "";
-        for (String fileName : Objects.requireNonNull(plainFilenamesIn(Repository.COMMIT_DIR))) {
-            log = log.concat("===\n");
-            Commit commit = readObject(join(Repository.COMMIT_DIR, fileName), Commit.class);
-            log = log.concat("commit " + commitHash(commit) + "\n");
-            log = log.concat("Date: " + commit.dateCommit + "\n");
-            log = log.concat(commit.message + "\n" + "\n");
+    /** Returns the log entry of COMMIT, whose hash is HASH. */
+    private static String logEntry(String hash, Commit commit) {
+        String merge = commit.secondParentHash == null ? ""
+                : mergeLine(commit.parentHash, commit.secondParentHash);
+        return "===\n" + "commit " + hash + "\n" + merge + "Date: " + commit.dateCommit + "\n"
+                + commit.message + "\n" + "\n";
+    }
+
+    /** Returns the line of a log entry naming the parents PARENT and
+     *  SECONDPARENT of a merge commit by their first seven digits. */
+    private static String mergeLine(String parent, String secondParent) {
+        return "Merge: " + parent.substring(0, 7) + " " + secondParent.substring(0, 7) + "\n";
+    }
+
+    /** Returns COMMIT, whose hash is HASH, as one line of JSON. */
+    private static String jsonRecord(String hash, Commit commit) {
+        StringBuilder parents = new StringBuilder();
+        for (String parent : CommitGraph.parentHashes(commit)) {
+            parents.append(parents.length() == 0 ? "" : ",").append(quote(parent));
         }
-        return log;
+        return "{\"commit\":" + quote(hash) + ",\"parents\":[" + parents + "]"
+                + ",\"tree\":" + quote(commit.treeHash()) + ",\"date\":" + quote(commit.dateCommit)
+                + ",\"message\":" + quote(commit.message) + "}\n";
+    }
+
+    /** Returns S as a JSON string literal, or null if S is null. */
+    static String quote(String s) {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c == '\n') {
+                quoted.append("\\n");
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
     }
-    public static String commitsFromMessage(String commitMessage) {
-        String log = "";
-        for (String fileName :  Objects.requireNonNull(plainFilenamesIn(Repository.COMMIT_DIR))) {
-            Commit commit = readObject(join(Repository.COMMIT_DIR, fileName), Commit.class);
-            if (commit.message.equals(commitMessage)) {
-                log = log.concat(fileName + "\n");
+
+    /** Writes to OUT the hashes of at most LIMIT commits matching QUERY as
+     *  Repository.find describes for MATCH, one per line, and returns how
+     *  many it wrote. The commits are looked up in the message index. */
+    public static int commitsFromMessage(String query, String match, PrintWriter out,
+                                         int limit) {
+        List<String> hashes;
+        try (Instrumentation.Timer timer = Instrumentation.time("search-index")) {
+            if ("--word".equals(match)) {
+                hashes = MessageIndex.words(query, limit);
+            } else if ("--prefix".equals(match)) {
+                hashes = MessageIndex.prefix(query, limit);
+            } else {
+                hashes = MessageIndex.exact(query, limit);
             }
         }
-        if (log.equals("")) {
-            return "Found no commit with that message.";
+        for (String hash : hashes) {
+            out.print(hash + "\n");
         }
-        return log;
+        return hashes.size();
     }
+
     public static String printStatus() {
         StagingArea staging = getStagingArea();
 
         // Branches:
         String log = "=== Branches ===\n";
-        List<String> branchNames = Objects.requireNonNull(plainFilenamesIn(BRANCH_DIR));
-        Collections.sort(branchNames);
-        for (String branchName : branchNames) {
-            Branch branch = readObject(join(BRANCH_DIR, branchName), Branch.class);
-            if (branch.commitHash.equals(commitHash(staging.headCommit))) {
+        for (String branchName : RepositoryContext.get().branchNames()) {
+            if (branchName.equals(staging.currentBranch)) {
                 log = log.concat("*");
             }
             log = log.concat(branchName + "\n");
@@ -144,9 +209,43 @@ public class Saving {
             log = log.concat(fileName + "\n");
         }
         log = log.concat("\n");
+        // Working files are only hashed if their stat data changed since the
+        // last time they were.
+        TreeMap<String, String> modified = new TreeMap<>();
+        TreeSet<String> untracked = new TreeSet<>();
+        TreeMap<String, String> tracked = staging.headCommit().files();
+        StatCache statCache = RepositoryContext.get().statCache();
+        List<String> workingFiles = WorkTree.walk(Repository.CWD, "");
+        TreeMap<String, String> expected = new TreeMap<>(tracked);
+        expected.keySet().removeAll(staging.toRemove.keySet());
+        expected.putAll(staging.stagedToAdd);
+        for (String path : workingFiles) {
+            if (!expected.containsKey(path)) {
+                untracked.add(path);
+            }
+        }
+        // the files that have to be compared are hashed in parallel
+        TreeMap<String, String> hashes = WorkTree.hash(new ArrayList<>(expected.keySet()),
+                statCache);
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            String path = entry.getKey();
+            String working = hashes.get(path);
+            if (working == null) {
+                statCache.forget(path);
+                modified.put(path, "deleted");
+            } else if (!working.equals(entry.getValue())) {
+                modified.put(path, "modified");
+            }
+        }
         log = log.concat("=== Modifications Not Staged For Commit ===\n");
+        for (Map.Entry<String, String> entry : modified.entrySet()) {
+            log = log.concat(entry.getKey() + " (" + entry.getValue() + ")\n");
+        }
         log = log.concat("\n");
         log = log.concat("=== Untracked Files ===\n");
+        for (String fileName : untracked) {
+            log = log.concat(fileName + "\n");
+        }
         return log;
     }
 }
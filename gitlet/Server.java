@@ -0,0 +1,113 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+
+import static gitlet.Utils.join;
+
+/** A gitlet that keeps running, so that commands do not each pay for
+ *  starting a JVM and reading the branches, staging index and commit graph
+ *  afresh. It listens on the Unix domain socket .gitlet/server.sock of the
+ *  repository in the current directory, and runs the commands Clients send
+ *  there one at a time, exactly as Main would. Whatever it keeps between
+ *  commands is checked against the files on disk before each command (see
+ *  RepositoryContext), so other processes may still change the repository.
+ *
+ *  A request is the number of arguments (4 bytes) followed by each argument
+ *  as its UTF-8 length (4 bytes) and bytes. The answer is the exit status
+ *  (4 bytes), then the command's standard output and standard error, each
+ *  as its length (4 bytes) and bytes.
+ *
+ *  @author Natalia Ramirez
+ */
+class Server {
+    /** Exit status of a command that failed with an internal error. */
+    static final int FAILED = 1;
+
+    /** Returns the socket the server of this repository listens on. */
+    static File socket() {
+        return join(Repository.GITLET_DIR, Client.SOCKET);
+    }
+
+    /** Serves requests until the process is stopped. */
+    static void serve() {
+        if (!Repository.GITLET_DIR.isDirectory()) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+        File socket = socket();
+        SocketChannel running = Client.connect(socket);
+        if (running != null) {
+            Client.close(running);
+            throw Utils.error("A gitlet server is already running.");
+        }
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            // left behind by a server that was killed
+            Files.deleteIfExists(socket.toPath());
+            server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+            Runtime.getRuntime().addShutdownHook(new Thread(socket::delete));
+            while (true) {
+                try (SocketChannel client = server.accept()) {
+                    handle(client);
+                } catch (IOException excp) {
+                    // the client went away; serve the next one
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not listen on %s: %s", socket, excp.getMessage());
+        }
+    }
+
+    /** Reads one request from CLIENT, runs it and sends back the answer. */
+    private static void handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(client)));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = Client.readString(in);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = run(args, out, err);
+        DataOutputStream reply = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(client)));
+        reply.writeInt(status);
+        reply.writeInt(out.size());
+        out.writeTo(reply);
+        reply.writeInt(err.size());
+        err.writeTo(reply);
+        reply.flush();
+    }
+
+    /** Runs the command ARGS as Main does, with its standard output going
+     *  to OUT and its standard error to ERR, and returns its exit status. */
+    static int run(String[] args, ByteArrayOutputStream out, ByteArrayOutputStream err) {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        System.setOut(new PrintStream(out, true));
+        System.setErr(new PrintStream(err, true));
+        try {
+            Main.execute(args);
+            return 0;
+        } catch (RuntimeException excp) {
+            excp.printStackTrace();
+            return FAILED;
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+    }
+}
@@ -1,17 +1,54 @@
 package gitlet;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.TreeMap;
 
+/** The staging index: the hash of the head commit, the current branch and
+ *  the files staged since. The head commit itself is not stored here; it is
+ *  read from the object store the first time it is needed and cached for
+ *  the rest of the process.
+ */
 public class StagingArea implements Serializable  {
-    Commit headCommit;
-    Branch masterBranch;
+    /** That of the class that wrote the first repositories, so that staging
+     *  indexes stored with Java serialization can still be read. */
+    private static final long serialVersionUID = -8991707438114528237L;
+    String headCommitHash;
+    String currentBranch;
     TreeMap<String, String> stagedToAdd;
     TreeMap<String, String> toRemove;
 
-    public StagingArea(Commit currentHeadCommit, Branch master) {
-        headCommit = currentHeadCommit;
-        masterBranch = master;
+    /** The last head commit read, shared by every StagingArea of this process. */
+    private static Commit cachedHead;
+    /** The hash of cachedHead. */
+    private static String cachedHeadHash;
+
+    public StagingArea(String currentHeadCommitHash, String branchName) {
+        headCommitHash = currentHeadCommitHash;
+        currentBranch = branchName;
         stagedToAdd = new TreeMap<>();
         toRemove = new TreeMap<>();
     }
+
+    /** Reads a staging index stored with Java serialization from IN. It
+     *  holds the head commit itself and the current Branch, which was always
+     *  made from that commit and so names it by hash. */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        stagedToAdd = (TreeMap<String, String>) fields.get("stagedToAdd", null);
+        toRemove = (TreeMap<String, String>) fields.get("toRemove", null);
+        Branch branch = (Branch) fields.get("masterBranch", null);
+        headCommitHash = branch.commitHash;
+        currentBranch = branch.name;
+    }
+
+    /** Returns the head commit, reading it only on first use. */
+    Commit headCommit() {
+        if (!headCommitHash.equals(cachedHeadHash)) {
+            cachedHead = ObjectStore.readCommit(headCommitHash);
+            cachedHeadHash = headCommitHash;
+        }
+        return cachedHead;
+    }
 }
@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.TreeMap;
+
+/** What the working files looked like when they were last hashed: for each
+ *  path its size, modification time, inode (where the file system has one)
+ *  and SHA-1 hash. A file whose stat data still matches is not read again.
+ *  Workers may hash different files through one cache at the same time.
+ *
+ *  @author Natalia Ramirez
+ */
+class StatCache implements Serializable {
+
+    /** The stat data and hash of one file. */
+    static class Entry implements Serializable {
+        long size;
+        long modified;
+        String inode;
+        String hash;
+    }
+
+    /** The entries, by path. */
+    TreeMap<String, Entry> entries = new TreeMap<>();
+    /** When this cache was last written, in milliseconds. */
+    long writtenAt;
+    /** True if an entry changed since this cache was read. */
+    transient boolean changed;
+
+    /** Returns the hash of the working file FILE, named PATH, or null if it
+     *  does not exist. The file is only read if its stat data changed since
+     *  it was last hashed. */
+    String hash(String path, File file) {
+        BasicFileAttributes attrs = stat(file);
+        if (attrs == null) {
+            return null;
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(path);
+        }
+        if (entry != null && matches(entry, attrs)) {
+            return entry.hash;
+        }
+        String hash = ObjectStore.hashFile(file);
+        put(path, attrs, hash);
+        return hash;
+    }
+
+    /** Records that FILE, named PATH, now has contents with hash HASH. */
+    void record(String path, File file, String hash) {
+        BasicFileAttributes attrs = stat(file);
+        if (attrs != null) {
+            put(path, attrs, hash);
+        }
+    }
+
+    /** Drops the entry for PATH. */
+    synchronized void forget(String path) {
+        if (entries.remove(path) != null) {
+            changed = true;
+        }
+    }
+
+    /** True if ENTRY still describes a file with attributes ATTRS. A file
+     *  modified no earlier than the last write of this cache might have
+     *  changed again within the same clock tick, so it never matches. */
+    private boolean matches(Entry entry, BasicFileAttributes attrs) {
+        long modified = attrs.lastModifiedTime().toMillis();
+        return entry.size == attrs.size() && entry.modified == modified
+                && modified < writtenAt
+                && (entry.inode == null || entry.inode.equals(inode(attrs)));
+    }
+
+    /** Stores an entry for PATH with attributes ATTRS and hash HASH. */
+    private synchronized void put(String path, BasicFileAttributes attrs, String hash) {
+        Entry entry = new Entry();
+        entry.size = attrs.size();
+        entry.modified = attrs.lastModifiedTime().toMillis();
+        entry.inode = inode(attrs);
+        entry.hash = hash;
+        entries.put(path, entry);
+        changed = true;
+    }
+
+    /** Returns the attributes of FILE, or null if it is not a plain file. */
+    private static BasicFileAttributes stat(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            return attrs.isRegularFile() ? attrs : null;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Returns the inode of a file with attributes ATTRS, or null if the file
+     *  system does not report one. */
+    private static String inode(BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        return key == null ? null : key.toString();
+    }
+}
@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** One directory of a commit's snapshot: the hash of the blob of each file
+ *  in it and the hash of the tree of each subdirectory. Trees are stored by
+ *  the SHA-1 hash of their encoding, so a directory that did not change is
+ *  stored once and shared by every commit that has it, and two snapshots
+ *  can be compared one directory at a time, skipping subtrees whose hashes
+ *  are equal. A tree is encoded as
+ *
+ *      count (4 bytes), then per entry, in name order:
+ *      name (modified UTF-8) | kind (1 byte) | raw 20-byte hash
+ *
+ *  @author Natalia Ramirez
+ */
+class Tree {
+    /** Kind of an entry for a file. */
+    static final byte FILE = 0;
+    /** Kind of an entry for a subdirectory. */
+    static final byte DIRECTORY = 1;
+
+    /** The entries, by name. Names of subdirectories end with '/'. */
+    final TreeMap<String, String> entries;
+
+    /** A tree with ENTRIES. */
+    Tree(TreeMap<String, String> entries) {
+        this.entries = entries;
+    }
+
+    /** Returns the stored tree with hash TREEHASH. */
+    static Tree read(String treeHash) {
+        return decode(ObjectStore.readTree(treeHash));
+    }
+
+    /** Stores TREE unless the store already holds it, and returns its hash. */
+    static String write(Tree tree) {
+        byte[] payload = tree.encode();
+        String treeHash = Utils.sha1(payload);
+        ObjectStore.writeTree(treeHash, payload);
+        return treeHash;
+    }
+
+    /** Stores the trees of the snapshot FILES, a map from '/'-separated paths
+     *  to blob hashes, and returns the hash of its root. */
+    static String write(SortedMap<String, String> files) {
+        return update(null, files);
+    }
+
+    /** Returns the hash of the root of the snapshot BASETREEHASH with CHANGES
+     *  applied: each path mapped to its new blob hash, or to null if it is
+     *  removed. BASETREEHASH is null for an empty snapshot. Only the trees
+     *  of directories holding a changed path are read and written. */
+    static String update(String baseTreeHash, SortedMap<String, String> changes) {
+        TreeMap<String, String> entries = updateEntries(baseTreeHash, changes);
+        return write(new Tree(entries));
+    }
+
+    /** Returns the entries of the tree BASETREEHASH with CHANGES, paths
+     *  relative to that tree, applied. The trees of changed subdirectories
+     *  are written; empty ones are dropped. */
+    private static TreeMap<String, String> updateEntries(String baseTreeHash,
+                                                         SortedMap<String, String> changes) {
+        TreeMap<String, String> entries = baseTreeHash == null ? new TreeMap<>()
+                : new TreeMap<>(read(baseTreeHash).entries);
+        TreeMap<String, TreeMap<String, String>> bySubdir = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                bySubdir.computeIfAbsent(path.substring(0, slash + 1), k -> new TreeMap<>())
+                        .put(path.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                entries.remove(path);
+            } else {
+                entries.put(path, change.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> subdir : bySubdir.entrySet()) {
+            TreeMap<String, String> subEntries =
+                    updateEntries(entries.get(subdir.getKey()), subdir.getValue());
+            if (subEntries.isEmpty()) {
+                entries.remove(subdir.getKey());
+            } else {
+                entries.put(subdir.getKey(), write(new Tree(subEntries)));
+            }
+        }
+        return entries;
+    }
+
+    /** Returns every file of the snapshot whose root is TREEHASH, as a map
+     *  from '/'-separated paths to blob hashes. */
+    static TreeMap<String, String> flatten(String treeHash) {
+        TreeMap<String, String> files = new TreeMap<>();
+        flatten(treeHash, "", files);
+        return files;
+    }
+
+    /** Adds the files of the tree TREEHASH, named PREFIX, to FILES. */
+    private static void flatten(String treeHash, String prefix, Map<String, String> files) {
+        for (Map.Entry<String, String> entry : read(treeHash).entries.entrySet()) {
+            if (isDirectory(entry.getKey())) {
+                flatten(entry.getValue(), prefix + entry.getKey(), files);
+            } else {
+                files.put(prefix + entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /** Returns the blob hash of the file PATH in the snapshot whose root is
+     *  TREEHASH, or null if the snapshot does not have it. Only the trees
+     *  along PATH are read. */
+    static String find(String treeHash, String path) {
+        int slash = path.indexOf('/');
+        while (treeHash != null && slash >= 0) {
+            treeHash = read(treeHash).entries.get(path.substring(0, slash + 1));
+            path = path.substring(slash + 1);
+            slash = path.indexOf('/');
+        }
+        return treeHash == null ? null : read(treeHash).entries.get(path);
+    }
+
+    /** Returns the files that differ between the snapshots whose roots are
+     *  FROMTREEHASH and TOTREEHASH, mapped to their blob hash in the second,
+     *  or to null if it does not have them. Either hash may be null for an
+     *  empty snapshot. Subtrees with equal hashes are not read. */
+    static TreeMap<String, String> changes(String fromTreeHash, String toTreeHash) {
+        TreeMap<String, String> changes = new TreeMap<>();
+        changes(fromTreeHash, toTreeHash, "", changes);
+        return changes;
+    }
+
+    /** Adds the differences between the trees FROMTREEHASH and TOTREEHASH,
+     *  both named PREFIX, to CHANGES. */
+    private static void changes(String fromTreeHash, String toTreeHash, String prefix,
+                                Map<String, String> changes) {
+        if (fromTreeHash != null && fromTreeHash.equals(toTreeHash)) {
+            return;
+        }
+        TreeMap<String, String> from = fromTreeHash == null ? new TreeMap<>()
+                : read(fromTreeHash).entries;
+        TreeMap<String, String> to = toTreeHash == null ? new TreeMap<>()
+                : read(toTreeHash).entries;
+        TreeMap<String, String> names = new TreeMap<>(from);
+        names.putAll(to);
+        for (String name : names.keySet()) {
+            String fromHash = from.get(name);
+            String toHash = to.get(name);
+            if (isDirectory(name)) {
+                changes(fromHash, toHash, prefix + name, changes);
+            } else if (toHash == null || !toHash.equals(fromHash)) {
+                changes.put(prefix + name, toHash);
+            }
+        }
+    }
+
+    /** True if NAME is the name of a subdirectory entry. */
+    static boolean isDirectory(String name) {
+        return name.endsWith("/");
+    }
+
+    /** Returns the encoding of this tree. */
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(entries.size());
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeByte(isDirectory(entry.getKey()) ? DIRECTORY : FILE);
+                String hash = entry.getValue();
+                for (int k = 0; k < PackIndex.HASH_BYTES; k += 1) {
+                    out.writeByte(Integer.parseInt(hash.substring(2 * k, 2 * k + 2), 16));
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not encode tree: %s", excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the tree encoded in PAYLOAD. */
+    static Tree decode(byte[] payload) {
+        TreeMap<String, String> entries = new TreeMap<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            int count = in.readInt();
+            byte[] raw = new byte[PackIndex.HASH_BYTES];
+            for (int i = 0; i < count; i += 1) {
+                String name = in.readUTF();
+                in.readByte();
+                in.readFully(raw);
+                entries.put(name, ObjectStore.toHex(raw));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt tree: %s", excp.getMessage());
+        }
+        return new Tree(entries);
+    }
+}
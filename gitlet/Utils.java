@@ -11,13 +11,16 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Formatter;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import gitlet.Instrumentation.Counter;
 
 /** Assorted utilities.
  *
@@ -40,9 +43,12 @@ class Utils {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
             for (Object val : vals) {
                 if (val instanceof byte[]) {
+                    Instrumentation.add(Counter.BYTES_HASHED, ((byte[]) val).length);
                     md.update((byte[]) val);
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    byte[] bytes = ((String) val).getBytes(StandardCharsets.UTF_8);
+                    Instrumentation.add(Counter.BYTES_HASHED, bytes.length);
+                    md.update(bytes);
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
@@ -98,6 +104,7 @@ class Utils {
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
+            Instrumentation.count(Counter.FILES_READ);
             return Files.readAllBytes(file.toPath());
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
@@ -141,6 +148,8 @@ class Utils {
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
         try {
+            Instrumentation.count(Counter.FILES_READ);
+            Instrumentation.count(Counter.DESERIALIZATIONS);
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
@@ -204,6 +213,20 @@ class Utils {
         return Paths.get(first.getPath(), others).toFile();
     }
 
+    /** Returns a string that changes whenever FILE is modified or replaced:
+     *  its file key, size and modification time. Returns null if FILE does
+     *  not exist. */
+    static String stamp(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            return attrs.fileKey() + ":" + attrs.size() + ":"
+                    + attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
 
     /* SERIALIZATION UTILITIES */
 
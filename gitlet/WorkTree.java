@@ -0,0 +1,159 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+import static gitlet.Utils.join;
+
+/** Walks and hashes the working tree on a pool of worker threads. Paths are
+ *  relative to the working directory and use '/' as the separator; every
+ *  result comes back sorted, whatever order the workers finish in. The
+ *  number of workers is the setting "threads", by default one per core.
+ *
+ *  @author Natalia Ramirez
+ */
+class WorkTree {
+    /** Lists with fewer paths than this are handled by one worker. */
+    private static final int SPLIT_THRESHOLD = 16;
+
+    /** The shared pool, created on first use. */
+    private static ForkJoinPool pool;
+
+    /** Returns the number of worker threads to use. */
+    static int threads() {
+        return Config.intSetting("threads", Runtime.getRuntime().availableProcessors(), 1, 256);
+    }
+
+    /** Returns the shared pool of workers. */
+    static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(threads());
+        }
+        return pool;
+    }
+
+    /** Returns the sorted paths of all plain files under DIR, which is named
+     *  PREFIX relative to the working directory ("" for the working directory
+     *  itself). .gitlet directories are skipped. */
+    static List<String> walk(File dir, String prefix) {
+        return walk(dir, prefix, pool());
+    }
+
+    /** As walk(DIR, PREFIX), using the workers of POOL. */
+    static List<String> walk(File dir, String prefix, ForkJoinPool pool) {
+        try (Instrumentation.Timer timer = Instrumentation.time("walk-worktree")) {
+            List<String> paths = pool.invoke(new Walk(dir, prefix));
+            Collections.sort(paths);
+            return paths;
+        }
+    }
+
+    /** Returns the result of FUNCTION for each of PATHS, computed in parallel,
+     *  in path order. Paths for which FUNCTION returns null are left out. */
+    static <T> TreeMap<String, T> map(List<String> paths, Function<String, T> function) {
+        return map(paths, function, pool());
+    }
+
+    /** As map(PATHS, FUNCTION), using the workers of POOL. */
+    static <T> TreeMap<String, T> map(List<String> paths, Function<String, T> function,
+                                      ForkJoinPool pool) {
+        List<T> results = new ArrayList<>(Collections.nCopies(paths.size(), (T) null));
+        pool.invoke(new MapTask<>(paths, function, results, 0, paths.size()));
+        TreeMap<String, T> byPath = new TreeMap<>();
+        for (int i = 0; i < paths.size(); i += 1) {
+            if (results.get(i) != null) {
+                byPath.put(paths.get(i), results.get(i));
+            }
+        }
+        return byPath;
+    }
+
+    /** Returns the hashes of the working files at PATHS, computed in parallel
+     *  through STATCACHE. Files that do not exist are left out. */
+    static TreeMap<String, String> hash(List<String> paths, StatCache statCache) {
+        try (Instrumentation.Timer timer = Instrumentation.time("hash-worktree")) {
+            return map(paths, path -> statCache.hash(path, join(Repository.CWD, path)));
+        }
+    }
+
+    /** Lists one directory and forks a task for each subdirectory. */
+    private static class Walk extends RecursiveTask<List<String>> {
+        private final File dir;
+        private final String prefix;
+
+        Walk(File dir, String prefix) {
+            this.dir = dir;
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<String> paths = new ArrayList<>();
+            File[] children = dir.listFiles();
+            if (children == null) {
+                return paths;
+            }
+            List<Walk> subdirs = new ArrayList<>();
+            for (File child : children) {
+                if (child.isFile()) {
+                    paths.add(prefix + child.getName());
+                } else if (child.isDirectory() && !child.getName().equals(".gitlet")) {
+                    Walk walk = new Walk(child, prefix + child.getName() + "/");
+                    walk.fork();
+                    subdirs.add(walk);
+                }
+            }
+            for (Walk walk : subdirs) {
+                paths.addAll(walk.join());
+            }
+            return paths;
+        }
+    }
+
+    /** Applies a function to a range of paths, splitting the range in two
+     *  while it is large. */
+    private static class MapTask<T> extends RecursiveAction {
+        private final List<String> paths;
+        private final Function<String, T> function;
+        private final List<T> results;
+        private final int from;
+        private final int to;
+
+        MapTask(List<String> paths, Function<String, T> function, List<T> results,
+                int from, int to) {
+            this.paths = paths;
+            this.function = function;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i += 1) {
+                    results.set(i, function.apply(paths.get(i)));
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new MapTask<>(paths, function, results, from, mid),
+                    new MapTask<>(paths, function, results, mid, to));
+        }
+    }
+
+    /** Returns PATH, a file name given on the command line, relative to the
+     *  working directory and with '/' separators. */
+    static String relativePath(String path) {
+        String relative = Repository.CWD.toPath()
+                .relativize(Repository.CWD.toPath().resolve(path).normalize()).toString();
+        return relative.replace(File.separatorChar, '/');
+    }
+}
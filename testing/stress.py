@@ -0,0 +1,158 @@
+import re, sys
+from getopt import getopt, GetoptError
+from os.path import abspath, dirname, join
+from shutil import rmtree
+from subprocess import run, PIPE, STDOUT
+from tempfile import mkdtemp
+from threading import Thread, Event, Lock
+
+USAGE = """\
+Usage: python3 stress.py OPTIONS
+
+   OPTIONS may include
+       --progdir=DIR  Directory or JAR files containing gitlet application
+                      (default: the directory above this one)
+       --writers=N    Number of commands writing at once (default 8)
+       --readers=N    Number of commands reading at once (default 2)
+       --rounds=N     Files each writer adds (default 5)
+       --keep         Keep the test directory
+
+Runs many gitlet commands at once against one repository and checks that
+none of them fails and that no change any of them made is lost.  First the
+writers each add their own files one at a time, after which every file must
+be staged.  Then the writers each add and commit their own files, after
+which every file must be in the head commit, and the log of the current
+branch must hold every commit made.  Readers run log, global-log, find and
+status throughout, and must never fail.
+"""
+
+STAGED = re.compile(r"=== Staged Files ===\n(.*?)\n\n", re.S)
+
+
+class Failures:
+    """The failures seen so far, from any thread."""
+
+    def __init__(self):
+        self.lock = Lock()
+        self.messages = []
+
+    def add(self, message):
+        with self.lock:
+            self.messages.append(message)
+
+
+def gitlet(repo, *args):
+    """Runs gitlet with ARGS in REPO and returns its exit status and output."""
+    result = run(["java", "-cp", progdir, "gitlet.Main"] + list(args),
+                 cwd=repo, stdout=PIPE, stderr=STDOUT, universal_newlines=True)
+    return result.returncode, result.stdout
+
+
+def checked(failures, repo, *args, allowed=()):
+    """Runs gitlet with ARGS in REPO, recording a failure unless it exits
+    normally and prints nothing or one of the lines in ALLOWED."""
+    status, out = gitlet(repo, *args)
+    if status != 0 or "Exception" in out or "changed by another" in out \
+       or (out and out.rstrip("\n") not in allowed and args[0] in ("add", "commit")):
+        failures.add("gitlet {}: status {}\n{}".format(" ".join(args), status, out))
+    return out
+
+
+def write(repo, name):
+    with open(join(repo, name), "w") as f:
+        f.write("contents of {}\n".format(name))
+
+
+def adder(failures, repo, writer):
+    for r in range(rounds):
+        name = "add-{}-{}.txt".format(writer, r)
+        write(repo, name)
+        checked(failures, repo, "add", name)
+
+
+def committer(failures, repo, writer, made):
+    for r in range(rounds):
+        name = "commit-{}-{}.txt".format(writer, r)
+        write(repo, name)
+        checked(failures, repo, "add", name)
+        # a concurrent commit may already have taken the file
+        out = checked(failures, repo, "commit", "writer {} round {}".format(writer, r),
+                      allowed=("No changes added to the commit.",))
+        if not out:
+            made.append(1)
+
+
+def reader(failures, repo, done):
+    commands = [("log",), ("global-log",), ("find", "writer"), ("status",)]
+    i = 0
+    while not done.is_set():
+        checked(failures, repo, *commands[i % len(commands)])
+        i += 1
+
+
+def phase(failures, repo, target, args_of):
+    """Runs TARGET in each writer thread alongside the readers."""
+    done = Event()
+    readers = [Thread(target=reader, args=(failures, repo, done))
+               for _ in range(num_readers)]
+    writers = [Thread(target=target, args=args_of(w)) for w in range(num_writers)]
+    for t in readers + writers:
+        t.start()
+    for t in writers:
+        t.join()
+    done.set()
+    for t in readers:
+        t.join()
+
+
+def main(repo):
+    failures = Failures()
+    checked(failures, repo, "init")
+    phase(failures, repo, adder, lambda w: (failures, repo, w))
+    staged = STAGED.search(checked(failures, repo, "status"))
+    staged = set(staged.group(1).split("\n")) if staged else set()
+    for w in range(num_writers):
+        for r in range(rounds):
+            if "add-{}-{}.txt".format(w, r) not in staged:
+                failures.add("add-{}-{}.txt is no longer staged".format(w, r))
+    checked(failures, repo, "commit", "added by the adders")
+
+    made = []
+    phase(failures, repo, committer, lambda w: (failures, repo, w, made))
+    status = checked(failures, repo, "status")
+    if not re.search(r"=== Staged Files ===\n\n", status) \
+       or not re.search(r"=== Untracked Files ===\n*$", status):
+        failures.add("files were lost by the commits:\n" + status)
+    # the initial commit, the adders' commit and the committers' ones
+    commits = checked(failures, repo, "log").count("\ncommit ")
+    if commits != len(made) + 2:
+        failures.add("log holds {} commits instead of {}".format(commits, len(made) + 2))
+
+    for message in failures.messages:
+        print(message)
+    print("Ran {} writers and {} readers for {} rounds: {} commits, {} failures."
+          .format(num_writers, num_readers, rounds, len(made), len(failures.messages)))
+    return not failures.messages
+
+
+if __name__ == "__main__":
+    try:
+        opts, args = getopt(sys.argv[1:], "", ["progdir=", "writers=", "readers=",
+                                                "rounds=", "keep"])
+    except GetoptError:
+        print(USAGE, file=sys.stderr)
+        sys.exit(1)
+    opts = dict(opts)
+    progdir = abspath(opts.get("--progdir", join(dirname(abspath(__file__)), "..")))
+    num_writers = int(opts.get("--writers", 8))
+    num_readers = int(opts.get("--readers", 2))
+    rounds = int(opts.get("--rounds", 5))
+    repo = mkdtemp(prefix="gitlet-stress-")
+    try:
+        ok = main(repo)
+    finally:
+        if "--keep" in opts:
+            print("Repository kept in", repo)
+        else:
+            rmtree(repo)
+    sys.exit(0 if ok else 1)